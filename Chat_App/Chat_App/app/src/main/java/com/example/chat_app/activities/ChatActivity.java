@@ -1,40 +1,100 @@
 package com.example.chat_app.activities;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.os.Bundle;
-import android.util.Base64;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.View;
+import android.widget.ArrayAdapter;
+import android.widget.EditText;
+import android.widget.Toast;
 
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.Lifecycle;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
+import com.example.chat_app.R;
 import com.example.chat_app.adapters.ChatAdapter;
+import com.example.chat_app.database.MessageOutbox;
+import com.example.chat_app.database.MessageStore;
+import com.example.chat_app.database.MessageSync;
 import com.example.chat_app.databinding.ActivityChatBinding;
+import com.example.chat_app.databinding.DialogSearchMessagesBinding;
+import com.example.chat_app.firebase.MessageNotifier;
+import com.example.chat_app.listeners.MessageListener;
+import com.example.chat_app.metrics.Counter;
+import com.example.chat_app.metrics.Histogram;
+import com.example.chat_app.metrics.Metrics;
 import com.example.chat_app.models.ChatMessage;
 import com.example.chat_app.models.User;
+import com.example.chat_app.repository.Callback;
+import com.example.chat_app.repository.MessageRepository;
+import com.example.chat_app.repository.Repositories;
+import com.example.chat_app.utilities.AvatarCache;
 import com.example.chat_app.utilities.Constants;
+import com.example.chat_app.utilities.FrameBatcher;
+import com.example.chat_app.utilities.MessageDateFormatter;
+import com.example.chat_app.utilities.MessageLog;
 import com.example.chat_app.utilities.PreferenceManager;
-import com.google.firebase.firestore.DocumentChange;
-import com.google.firebase.firestore.EventListener;
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QuerySnapshot;
+import com.example.chat_app.utilities.SubscriptionHub;
+import com.example.chat_app.utilities.UserRegistry;
 
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
 
-public class ChatActivity extends AppCompatActivity {
+public class ChatActivity extends AppCompatActivity implements MessageOutbox.Listener, MessageListener {
+
+    private static final int PAGE_SIZE = 50;
+    private static final int MAX_WINDOW_SIZE = 4 * PAGE_SIZE;
+    private static final int PREFETCH_DISTANCE = 10;
+    private static final int MAX_SEARCH_RESULTS = 50;
+
+    private static final Histogram deliveryLatency = Metrics.histogram(Metrics.CHAT_SNAPSHOT_DELIVERY);
+    private static final Histogram sendEchoLatency = Metrics.histogram(Metrics.CHAT_SEND_ECHO);
+    private static final Histogram applyTime = Metrics.histogram(Metrics.CHAT_SNAPSHOT_APPLY);
+    private static final Histogram sendAckLatency = Metrics.histogram(Metrics.CHAT_SEND_ACK);
+    private static final Counter messagesSent = Metrics.counter(Metrics.CHAT_MESSAGES_SENT);
+    private static final Counter messagesReceived = Metrics.counter(Metrics.CHAT_MESSAGES_RECEIVED);
 
     private ActivityChatBinding binding;
     private User receiverUser;
-    private List<ChatMessage> chatMessages;
+    private MessageLog chatMessages;
     private ChatAdapter chatAdapter;
     private PreferenceManager preferenceManager;
-    private FirebaseFirestore database;
+    private MessageRepository messageRepository;
+    private SubscriptionHub.Subscription<List<ChatMessage>> messagesSubscription;
+    private MessageStore messageStore;
+    private MessageSync messageSync;
+    private MessageOutbox messageOutbox;
+    private String conversationId;
+    private boolean isLoadingPage;
+    private boolean hasOlderMessages = true; // False once the server has no older history
+    private boolean hasNewerMessages; // True while the newest messages are evicted from the window
+    private boolean isFirstSnapshot = true; // The first delivery is history, not live traffic
+    private int windowGeneration; // Bumped when a search result replaces the window; pages read for the old one are dropped
+    private volatile int searchGeneration; // Bumped per keystroke; queued searches that were overtaken are skipped
+    private final Map<String, Long> sendStartNanos = new HashMap<>(); // Message id -> System.nanoTime() at send
+    // Decoded deliveries waiting for the next frame
+    private final FrameBatcher<ChatMessage> incomingMessages = new FrameBatcher<>(this::applyIncomingMessages);
+    // Search results are formatted on the disk thread, so they get their own formatter (not thread safe)
+    private final MessageDateFormatter searchDateFormatter = new MessageDateFormatter();
+    // The formatters check the locale themselves but only learn of a new time zone from here
+    private final BroadcastReceiver timeZoneReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            MessageDateFormatter.invalidateAll();
+            chatAdapter.notifyItemRangeChanged(0, chatAdapter.getItemCount());
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -47,52 +107,502 @@ public class ChatActivity extends AppCompatActivity {
         loadReceiverDetails();
         init();
         listenMessages();
+        registerReceiver(timeZoneReceiver, new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED));
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        if (messagesSubscription != null) {
+            messagesSubscription.resume();
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // Not visible: stop applying deliveries; the shared listener is detached if we do not come back soon
+        if (messagesSubscription != null) {
+            messagesSubscription.pause();
+        }
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        // No notifications for the chat on screen, and the ones already shown are cleared
+        MessageNotifier.getInstance(getApplicationContext()).setActiveConversation(conversationId);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        MessageNotifier.getInstance(getApplicationContext()).setActiveConversation(null);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        unregisterReceiver(timeZoneReceiver);
+        messageOutbox.removeListener(this);
+        if (messagesSubscription != null) {
+            messagesSubscription.remove();
+        }
+        incomingMessages.cancel();
     }
 
     private void init() {
         // Initialize preference manager, chat messages list, and chat adapter
         preferenceManager = new PreferenceManager(getApplicationContext());
-        chatMessages = new ArrayList<>();
+        chatMessages = new MessageLog();
         chatAdapter = new ChatAdapter(
-                chatMessages, // List<ChatMessage> chatMessages
-                getBitmapFromEncodedString(receiverUser.image), // Bitmap reciverProfileImage
-                preferenceManager.getString(Constants.KEY_USER_ID)// String senderID
+                chatMessages, // MessageLog chatMessages
+                null, // Bitmap reciverProfileImage, set once the avatar cache delivers it
+                preferenceManager.getString(Constants.KEY_USER_ID), // String senderID
+                this // MessageListener, long-press on our own messages
         );
 
         // Set the chat adapter on the RecyclerView
         binding.chatRecyclerView.setAdapter(chatAdapter);
+        AvatarCache.getInstance(getApplicationContext())
+                .load(receiverUser.imageHash, chatAdapter::setReceiverProfileImage);
 
-        // Get an instance of Firebase Firestore
-        database = FirebaseFirestore.getInstance();
+        // Load older or newer pages as the user scrolls towards either end of the window
+        binding.chatRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                onChatScrolled(recyclerView, dy);
+            }
+        });
+
+        // Live messages, older pages and the conversation index
+        messageRepository = Repositories.messages();
+
+        // Local copy of this conversation, used to render before the network answers
+        messageStore = new MessageStore(getApplicationContext());
+        messageSync = new MessageSync(getApplicationContext());
+        conversationId = ChatMessage.getConversationId(preferenceManager.getString(Constants.KEY_USER_ID), receiverUser.id);
+
+        // Outgoing messages go through the durable outbox; we are told when they reach Firestore
+        messageOutbox = MessageOutbox.getInstance(getApplicationContext());
+        messageOutbox.addListener(this);
     }
 
     private void sendMessage() {
-        // Create a HashMap to store the message data
-        HashMap<String, Object> message = new HashMap<>();
-        message.put(Constants.KEY_SENDER_ID, preferenceManager.getString(Constants.KEY_USER_ID));
-        message.put(Constants.KEY_RECEIVER_ID, receiverUser.id);
-        message.put(Constants.KEY_MESSAGE, binding.inputMessage.getText().toString());
-        message.put(Constants.KEY_TIMESTAMP, new Date());
+        String text = binding.inputMessage.getText().toString();
+        if (text.trim().isEmpty()) {
+            return;
+        }
 
-        // Add the message to the chat collection in Firestore
-        database.collection(Constants.KEY_COLLECTION_CHAT).add(message);
+        // The document id is generated on the device, so the message can be shown and retried under its final id
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.id = messageRepository.newMessageId();
+        chatMessage.conversationId = conversationId;
+        chatMessage.senderId = preferenceManager.getString(Constants.KEY_USER_ID);
+        chatMessage.receiverId = receiverUser.id;
+        chatMessage.message = text;
+        chatMessage.timestamp = System.currentTimeMillis();
+        chatMessage.pending = true;
+
+        // Show it right away, then hand it to the outbox which batches and delivers it.
+        // While the window is far back in the history it is read with the latest page instead.
+        if (!hasNewerMessages) {
+            insertPage(Collections.singletonList(chatMessage));
+            binding.chatRecyclerView.smoothScrollToPosition(chatMessages.size() - 1);
+            binding.chatRecyclerView.setVisibility(View.VISIBLE);
+            binding.progressBar.setVisibility(View.GONE);
+        }
+        sendStartNanos.put(chatMessage.id, System.nanoTime());
+        messagesSent.increment();
+        messageOutbox.enqueue(chatMessage);
 
         // Clear the input text field
         binding.inputMessage.setText(null);
     }
 
+    @Override
+    public void onMessagesSent(List<ChatMessage> sentMessages) {
+        // Un-dim the echoes of our messages that are in the window
+        for (ChatMessage sentMessage : sentMessages) {
+            if (!conversationId.equals(sentMessage.conversationId)) {
+                continue;
+            }
+            Long startNanos = sendStartNanos.remove(sentMessage.id);
+            if (startNanos != null) {
+                sendAckLatency.recordSince(startNanos);
+            }
+            int position = chatMessages.positionOf(sentMessage);
+            if (position >= 0) {
+                chatMessages.setPending(position, false);
+                chatAdapter.notifyItemChanged(position);
+            }
+        }
+    }
+
+    @Override
+    public void onMessagesFailed(List<ChatMessage> failedMessages) {
+        // Rejected by the server for good: they are no longer in the outbox, take them out of the window too
+        boolean isShown = false;
+        for (ChatMessage failedMessage : failedMessages) {
+            if (conversationId.equals(failedMessage.conversationId)) {
+                sendStartNanos.remove(failedMessage.id);
+                chatMessages.remove(failedMessage, chatAdapter::notifyItemRangeRemoved);
+                isShown = true;
+            }
+        }
+        if (isShown) {
+            showToast("Message could not be sent");
+        }
+    }
+
+    @Override
+    public void onMessageLongClicked(ChatMessage chatMessage) {
+        String[] actions = {getString(R.string.edit_message), getString(R.string.delete_message)};
+        new AlertDialog.Builder(this)
+                .setItems(actions, (dialog, which) -> {
+                    if (which == 0) {
+                        showEditDialog(chatMessage);
+                    } else {
+                        deleteMessage(chatMessage);
+                    }
+                })
+                .show();
+    }
+
+    private void showEditDialog(ChatMessage chatMessage) {
+        EditText input = new EditText(this);
+        input.setText(chatMessage.message);
+        input.setSelection(input.length());
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.edit_message)
+                .setView(input)
+                .setPositiveButton(android.R.string.ok, (dialog, which) -> {
+                    String text = input.getText().toString();
+                    if (!text.trim().isEmpty() && !text.equals(chatMessage.message)) {
+                        editMessage(chatMessage, text);
+                    }
+                })
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
+
+    private void editMessage(ChatMessage chatMessage, String text) {
+        chatMessage.message = text;
+        chatMessage.editedAt = System.currentTimeMillis();
+        // Shown and stored right away; the listener's echo of the edit is then recognized and skipped
+        applyEdit(chatMessage);
+        messageStore.execute(() -> messageStore.saveMessages(Collections.singletonList(chatMessage)));
+        messageRepository.editMessage(chatMessage, (unused, error) -> {
+            if (error != null) {
+                showToast("Unable to edit message");
+            }
+        });
+    }
+
+    private void deleteMessage(ChatMessage chatMessage) {
+        chatMessage.deleted = true;
+        chatMessage.message = null;
+        chatMessage.editedAt = System.currentTimeMillis();
+        chatMessages.remove(chatMessage, chatAdapter::notifyItemRangeRemoved);
+        messageStore.execute(() -> messageStore.saveMessages(Collections.singletonList(chatMessage)));
+        messageRepository.deleteMessage(chatMessage, (unused, error) -> {
+            if (error != null) {
+                showToast("Unable to delete message");
+            }
+        });
+    }
+
+    // Replaces the text of a message in the window; false when the message is not in it
+    private boolean applyEdit(ChatMessage chatMessage) {
+        int position = chatMessages.update(chatMessage);
+        if (position < 0) {
+            return false;
+        }
+        chatAdapter.notifyItemChanged(position);
+        return true;
+    }
+
+    private void showToast(String message) {
+        Toast.makeText(getApplicationContext(), message, Toast.LENGTH_SHORT).show();
+    }
+
     private void listenMessages() {
-        database.collection(Constants.KEY_COLLECTION_CHAT)
-                .whereEqualTo(Constants.KEY_SENDER_ID, preferenceManager.getString(Constants.KEY_USER_ID))
-                .whereEqualTo(Constants.KEY_RECEIVER_ID, receiverUser.id)
-                .addSnapshotListener(eventListener);
-        database.collection(Constants.KEY_COLLECTION_CHAT)
-                .whereEqualTo(Constants.KEY_SENDER_ID, receiverUser.id)
-                .whereEqualTo(Constants.KEY_RECEIVER_ID, preferenceManager.getString(Constants.KEY_USER_ID))
-                .addSnapshotListener(eventListener);
+        // Render the newest stored page from disk, then only ask Firestore for newer messages (see MessageSync)
+        messageStore.execute(() -> {
+            List<ChatMessage> storedMessages = messageStore.getLatestMessages(conversationId, PAGE_SIZE);
+            // Messages that were not delivered yet (e.g. sent offline before the app was closed)
+            storedMessages.addAll(messageStore.getOutbox(conversationId));
+            runOnUiThread(() -> {
+                if (isFinishing()) {
+                    return;
+                }
+                if (!storedMessages.isEmpty()) {
+                    insertPage(storedMessages);
+                    binding.chatRecyclerView.setVisibility(View.VISIBLE);
+                    binding.progressBar.setVisibility(View.GONE);
+                }
+                listenNewMessages();
+            });
+        });
     }
 
-    private final EventListener<QuerySnapshot> eventListener = (value, error) -> {
+    private void listenNewMessages() {
+        // One shared listener per conversation: reopening the chat (or rotating) reuses it, and what it
+        // delivered so far is replayed at once. It starts at the watermark read when it attaches; with
+        // nothing synced yet, at the newest page (older pages are fetched while scrolling up).
+        // The key names the whole query, so a subscriber never shares a listener with a different limit.
+        // The hub keeps the source for as long as the listener lives, so it captures locals, never this activity.
+        MessageSync sync = messageSync;
+        String id = conversationId;
+        messagesSubscription = SubscriptionHub.getInstance().subscribe(
+                Constants.KEY_COLLECTION_CHAT + "/" + id + "?limit=" + PAGE_SIZE,
+                listener -> sync.listen(id, PAGE_SIZE, listener),
+                ChatActivity::keepNewest,
+                messagesListener);
+        if (!getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.STARTED)) {
+            messagesSubscription.pause(); // Stopped while the stored page was loading
+        }
+
+        // Opening the conversation reads it: clear the unread badge on the home screen
+        markConversationRead();
+        migrateLegacyMessages();
+    }
+
+    private void markConversationRead() {
+        messageRepository.markRead(preferenceManager.getString(Constants.KEY_USER_ID), receiverUser.id);
+    }
+
+    // Deliveries are deltas; a late subscriber only needs as many as fit in the window, anything older
+    // is in the local store by then (MessageSync stores every delivery before the hub hands it out)
+    private static List<ChatMessage> keepNewest(List<ChatMessage> previous, List<ChatMessage> delivery) {
+        List<ChatMessage> merged = new ArrayList<>(previous.size() + delivery.size());
+        merged.addAll(previous);
+        merged.addAll(delivery);
+        int excess = merged.size() - MAX_WINDOW_SIZE;
+        return excess > 0 ? new ArrayList<>(merged.subList(excess, merged.size())) : merged;
+    }
+
+    private void onChatScrolled(RecyclerView recyclerView, int dy) {
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        if (layoutManager == null || isLoadingPage || chatMessages.isEmpty()) {
+            return;
+        }
+        if (dy <= 0 && layoutManager.findFirstVisibleItemPosition() <= PREFETCH_DISTANCE) {
+            loadOlderPage();
+        } else if (dy > 0 && hasNewerMessages
+                && layoutManager.findLastVisibleItemPosition() >= chatMessages.size() - 1 - PREFETCH_DISTANCE) {
+            loadNewerPage();
+        }
+    }
+
+    private void loadOlderPage() {
+        isLoadingPage = true;
+        ChatMessage oldest = chatMessages.getFirst();
+        int generation = windowGeneration;
+        // Older pages come from disk while the stored history is known to be complete; once a page would
+        // cross its start (pushed messages and earlier syncs leave gaps below it) the server is asked
+        messageStore.execute(() -> {
+            List<ChatMessage> page = messageStore.getMessagesBefore(conversationId, oldest, PAGE_SIZE);
+            boolean isStored = page.size() == PAGE_SIZE || messageStore.isHistoryComplete(conversationId);
+            runOnUiThread(() -> {
+                if (generation != windowGeneration) {
+                    return;
+                }
+                if (!isStored && hasOlderMessages) {
+                    fetchOlderPage(oldest);
+                    return;
+                }
+                isLoadingPage = false;
+                if (page.size() < PAGE_SIZE) {
+                    hasOlderMessages = false; // The whole conversation is stored and this is its beginning
+                }
+                if (!page.isEmpty()) {
+                    insertOlderPage(page);
+                }
+            });
+        });
+    }
+
+    private void fetchOlderPage(ChatMessage oldest) {
+        int generation = windowGeneration;
+        messageRepository.getMessagesBefore(conversationId, oldest, PAGE_SIZE, (page, error) -> {
+            if (page != null) {
+                // The stored history now reaches back over this page too
+                boolean reachedBeginning = page.size() < PAGE_SIZE;
+                messageStore.execute(() -> messageStore.saveOlderPage(conversationId, oldest, page, reachedBeginning));
+            }
+            if (generation != windowGeneration) {
+                return;
+            }
+            isLoadingPage = false;
+            if (page == null) {
+                return;
+            }
+            if (page.size() < PAGE_SIZE) {
+                hasOlderMessages = false; // Reached the beginning of the conversation
+            }
+            Collections.reverse(page);
+            // Deleted messages keep a tombstone on the server, they are not shown
+            List<ChatMessage> visibleMessages = new ArrayList<>(page.size());
+            for (ChatMessage chatMessage : page) {
+                if (!chatMessage.deleted) {
+                    visibleMessages.add(chatMessage);
+                }
+            }
+            insertOlderPage(visibleMessages);
+        });
+    }
+
+    private void loadNewerPage() {
+        isLoadingPage = true;
+        ChatMessage newest = chatMessages.getLast();
+        int generation = windowGeneration;
+        messageStore.execute(() -> {
+            List<ChatMessage> page = messageStore.getMessagesAfter(conversationId, newest, PAGE_SIZE);
+            runOnUiThread(() -> {
+                if (generation != windowGeneration) {
+                    return;
+                }
+                isLoadingPage = false;
+                insertNewerPage(page);
+                if (page.size() < PAGE_SIZE && hasNewerMessages) {
+                    // Back at the live end: from now on the listener inserts directly.
+                    // One more read picks up whatever the listener stored while this page was loading.
+                    hasNewerMessages = false;
+                    loadNewerPage();
+                }
+            });
+        });
+    }
+
+    private void showSearchDialog() {
+        DialogSearchMessagesBinding dialogBinding = DialogSearchMessagesBinding.inflate(getLayoutInflater());
+        List<ChatMessage> results = new ArrayList<>();
+        ArrayAdapter<String> resultsAdapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1);
+        dialogBinding.listResults.setAdapter(resultsAdapter);
+        AlertDialog dialog = new AlertDialog.Builder(this)
+                .setView(dialogBinding.getRoot())
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+
+        // Search as the user types; the index answers from the local store without reading the bodies
+        dialogBinding.inputSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                searchMessages(s.toString(), results, resultsAdapter);
+            }
+        });
+        dialogBinding.listResults.setOnItemClickListener((parent, view, position, id) -> {
+            dialog.dismiss();
+            jumpToMessage(results.get(position));
+        });
+    }
+
+    private void searchMessages(String query, List<ChatMessage> results, ArrayAdapter<String> resultsAdapter) {
+        int generation = ++searchGeneration;
+        messageStore.execute(() -> {
+            if (generation != searchGeneration) {
+                return; // A newer keystroke is already queued behind this one
+            }
+            List<ChatMessage> found = messageStore.searchMessages(conversationId, query, MAX_SEARCH_RESULTS);
+            List<String> rows = new ArrayList<>(found.size());
+            for (ChatMessage chatMessage : found) {
+                rows.add(searchDateFormatter.format(chatMessage.timestamp) + "\n" + chatMessage.message);
+            }
+            runOnUiThread(() -> {
+                if (generation != searchGeneration) {
+                    return;
+                }
+                results.clear();
+                results.addAll(found);
+                resultsAdapter.clear();
+                resultsAdapter.addAll(rows);
+            });
+        });
+    }
+
+    // Replaces the window with the stored messages around a search result and scrolls to it.
+    // From there the window pages in both directions as usual, and returns to live updates at the newest end.
+    private void jumpToMessage(ChatMessage target) {
+        int generation = ++windowGeneration;
+        isLoadingPage = true;
+        messageStore.execute(() -> {
+            List<ChatMessage> page = messageStore.getMessagesBefore(conversationId, target, PAGE_SIZE);
+            page.add(target);
+            List<ChatMessage> newerMessages = messageStore.getMessagesAfter(conversationId, target, PAGE_SIZE);
+            page.addAll(newerMessages);
+            runOnUiThread(() -> {
+                if (isFinishing() || generation != windowGeneration) {
+                    return;
+                }
+                isLoadingPage = false;
+                chatMessages.removeFirst(chatMessages.size(), chatAdapter::notifyItemRangeRemoved);
+                insertPage(page);
+                hasNewerMessages = true;
+                chatAdapter.setHighlightedMessage(target);
+                binding.chatRecyclerView.setVisibility(View.VISIBLE);
+                binding.progressBar.setVisibility(View.GONE);
+                LinearLayoutManager layoutManager = (LinearLayoutManager) binding.chatRecyclerView.getLayoutManager();
+                if (layoutManager != null) {
+                    layoutManager.scrollToPositionWithOffset(chatMessages.positionOf(target),
+                            binding.chatRecyclerView.getHeight() / 3);
+                }
+                if (newerMessages.size() < PAGE_SIZE) {
+                    // The result is close to the newest messages: read them now and go back to live updates
+                    loadNewerPage();
+                }
+            });
+        });
+    }
+
+    private void insertOlderPage(List<ChatMessage> page) {
+        insertPage(page);
+        // Keep the window bounded: drop the newest messages, they are read back from disk when scrolling down
+        int excess = chatMessages.size() - MAX_WINDOW_SIZE;
+        if (excess > 0) {
+            chatMessages.removeLast(excess, chatAdapter::notifyItemRangeRemoved);
+            hasNewerMessages = true;
+        }
+    }
+
+    private void insertNewerPage(List<ChatMessage> page) {
+        insertPage(page);
+        // Same bound in the other direction: the oldest messages leave the window
+        int excess = chatMessages.size() - MAX_WINDOW_SIZE;
+        if (excess > 0) {
+            chatMessages.removeFirst(excess, chatAdapter::notifyItemRangeRemoved);
+        }
+    }
+
+    private void insertPage(List<ChatMessage> page) {
+        // Place each message by its epoch timestamp (skipping ids already shown) and notify the exact ranges
+        chatMessages.insertAll(page, chatAdapter::notifyItemRangeInserted);
+    }
+
+    private void migrateLegacyMessages() {
+        // Messages written before conversationId existed are invisible to the listener.
+        // Back-fill them once per conversation; the listener then receives them as added.
+        String migratedKey = Constants.KEY_CONVERSATION_MIGRATED + conversationId;
+        if (preferenceManager.getBoolean(migratedKey)) {
+            return;
+        }
+        messageRepository.backfillConversation(conversationId, preferenceManager.getString(Constants.KEY_USER_ID),
+                receiverUser.id, (unused, error) -> {
+                    if (error == null) {
+                        preferenceManager.putBoolean(migratedKey, true);
+                    }
+                });
+    }
+
+    private final Callback<List<ChatMessage>> messagesListener = (value, error) -> {
         // Check for error
         if (error != null) {
             return; // Exit the method if there is an error
@@ -101,52 +611,112 @@ public class ChatActivity extends AppCompatActivity {
         // Check if there is a value
         if (value != null) {
             int count = chatMessages.size(); // Get the initial size of the chatMessages list
+            List<ChatMessage> newMessages = new ArrayList<>();
 
-            // Iterate over the document changes
-            for (DocumentChange documentChange : value.getDocumentChanges()) {
-                // Check if the document change is of type ADDED
-                if (documentChange.getType() == DocumentChange.Type.ADDED) {
-                    ChatMessage chatMessage = new ChatMessage();
-
-                    // Set the properties of the chat message from the document
-                    chatMessage.senderId = documentChange.getDocument().getString(Constants.KEY_SENDER_ID);
-                    chatMessage.receiverId = documentChange.getDocument().getString(Constants.KEY_RECEIVER_ID);
-                    chatMessage.message = documentChange.getDocument().getString(Constants.KEY_MESSAGE);
-                    chatMessage.dateTime = getReadableDateTime(documentChange.getDocument().getDate(Constants.KEY_TIMESTAMP));
-                    chatMessage.dateObject = documentChange.getDocument().getDate(Constants.KEY_TIMESTAMP);
-                    chatMessages.add(chatMessage); // Add the chat message to the list
+            // Iterate over the added and changed messages; MessageSync has already stored them
+            for (ChatMessage chatMessage : value) {
+                if (chatMessage.editedAt == 0) {
+                    recordDelivery(chatMessage);
                 }
+                // Skip messages that were already rendered from the local store, and edits already applied
+                int position = chatMessages.positionOf(chatMessage);
+                if (position >= 0 && !chatMessage.deleted && chatMessages.getEditedAt(position) >= chatMessage.editedAt) {
+                    continue;
+                }
+                newMessages.add(chatMessage);
             }
 
-            // Sort the chat messages based on the dateObject
-            Collections.sort(chatMessages, (obj1, obj2) -> obj1.dateTime.compareTo(obj2.dateTime));
+            isFirstSnapshot = false;
 
+            // Nothing new in this snapshot (e.g. an empty delta), keep the current list as is
+            if (newMessages.isEmpty()) {
+                if (count == 0 && incomingMessages.isEmpty()) {
+                    binding.progressBar.setVisibility(View.GONE);
+                }
+                return;
+            }
 
-            // Check the count to determine if the adapter needs to be notified or items inserted
-            if (count == 0) {
-                chatAdapter.notifyDataSetChanged(); // Notify the adapter that the data has changed
-            } else {
-                chatAdapter.notifyItemRangeInserted(chatMessages.size(), chatMessages.size()); // Insert new items in the adapter
-                binding.chatRecyclerView.smoothScrollToPosition(chatMessages.size() - 1); // Scroll to the last item in the RecyclerView
+            // Messages from the receiver that arrive while the chat is open are read right away
+            for (ChatMessage chatMessage : newMessages) {
+                if (receiverUser.id.equals(chatMessage.senderId) && chatMessage.editedAt == 0) {
+                    markConversationRead();
+                    break;
+                }
             }
 
-            binding.chatRecyclerView.setVisibility(View.VISIBLE); // Make the RecyclerView visible
+            // The window is updated at the next frame, together with everything else that arrives until then
+            incomingMessages.addAll(newMessages);
+            return;
         }
 
         binding.progressBar.setVisibility(View.GONE); // Hide the progress bar
     };
 
-    private Bitmap getBitmapFromEncodedString(String encodedImage) {
-        // Decode the Base64 encoded string into a byte array
-        byte[] bytes = Base64.decode(encodedImage, Base64.DEFAULT);
+    // Applies the deliveries of one frame as a single window update
+    private void applyIncomingMessages(List<ChatMessage> newMessages) {
+        long startNanos = System.nanoTime();
+        binding.progressBar.setVisibility(View.GONE); // Hide the progress bar
 
-        // Decode the byte array into a Bitmap
-        return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+        // Edits and deletes of messages in the window: found by (timestamp, id) with a binary search,
+        // and only the affected row is rebound or removed
+        List<ChatMessage> addedMessages = new ArrayList<>();
+        for (ChatMessage chatMessage : newMessages) {
+            if (chatMessage.deleted) {
+                chatMessages.remove(chatMessage, chatAdapter::notifyItemRangeRemoved);
+            } else if (chatMessage.editedAt == 0 || !applyEdit(chatMessage)) {
+                addedMessages.add(chatMessage);
+            }
+        }
+
+        // While the user reads far back in the history the newest messages are not in the window;
+        // they are read from disk once the user scrolls down again
+        if (hasNewerMessages) {
+            return;
+        }
+        // Deliveries merged while the screen was stopped are cut to the newest MAX_WINDOW_SIZE, which may
+        // leave a hole after the window: page the range in from the store instead, where all of it is
+        if (addedMessages.size() >= MAX_WINDOW_SIZE && !chatMessages.isEmpty() && !isLoadingPage) {
+            hasNewerMessages = true;
+            loadNewerPage();
+            return;
+        }
+        int count = chatMessages.size();
+        List<ChatMessage> windowMessages = new ArrayList<>();
+        for (ChatMessage chatMessage : addedMessages) {
+            // Older than the window (e.g. back-filled legacy messages): it comes with the older pages
+            if (!chatMessages.isBeforeFirst(chatMessage)) {
+                windowMessages.add(chatMessage);
+            }
+        }
+        // A large first delivery is bounded like any newer page: only the newest messages stay in the window
+        insertNewerPage(windowMessages);
+        if (count > 0) {
+            binding.chatRecyclerView.smoothScrollToPosition(chatMessages.size() - 1); // Scroll to the last item in the RecyclerView
+        }
+
+        binding.chatRecyclerView.setVisibility(View.VISIBLE); // Make the RecyclerView visible
+        applyTime.recordSince(startNanos);
+    }
+
+    private void recordDelivery(ChatMessage chatMessage) {
+        // Our own message coming back from Firestore's local write
+        boolean isLocalWrite = chatMessage.pending;
+        Long startNanos = sendStartNanos.get(chatMessage.id);
+        if (isLocalWrite && startNanos != null) {
+            sendEchoLatency.recordSince(startNanos);
+            return;
+        }
+        // A live message from the other side: time from its send timestamp to this callback.
+        // Includes the clock difference between the two devices, so read it as a distribution.
+        if (!isFirstSnapshot && !isLocalWrite && receiverUser.id.equals(chatMessage.senderId)) {
+            deliveryLatency.record((System.currentTimeMillis() - chatMessage.timestamp) * 1000);
+            messagesReceived.increment();
+        }
     }
 
     private void loadReceiverDetails() {
-        // Retrieve the receiverUser object from the intent extras
-        receiverUser = (User) getIntent().getSerializableExtra(Constants.KEY_USER);
+        // Resolve the receiver from the in-process registry, falling back to the intent's extras
+        receiverUser = UserRegistry.getInstance().get(getIntent());
 
         // Set the receiver's name on the text view
         binding.textName.setText(receiverUser.name);
@@ -158,9 +728,8 @@ public class ChatActivity extends AppCompatActivity {
 
         // Set click listener for the send button to send a message
         binding.layoutSend.setOnClickListener(v -> sendMessage());
-    }
 
-    private String getReadableDateTime(Date date) {
-        return new SimpleDateFormat("MMMM dd, yyyy - hh:mm a", Locale.getDefault()).format(date);
+        // Set click listener for the search button to search the stored history
+        binding.imageSearch.setOnClickListener(v -> showSearchDialog());
     }
 }
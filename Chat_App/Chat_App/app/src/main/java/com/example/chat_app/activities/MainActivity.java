@@ -1,29 +1,42 @@
 package com.example.chat_app.activities;
 
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
-import android.util.Base64;
 import android.util.Log;
+import android.view.View;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import com.example.chat_app.BuildConfig;
+import com.example.chat_app.adapters.RecentConversationsAdapter;
+import com.example.chat_app.database.MessageOutbox;
+import com.example.chat_app.database.MessageStore;
 import com.example.chat_app.databinding.ActivityMainBinding;
+import com.example.chat_app.firebase.TokenRegistrar;
+import com.example.chat_app.listeners.ConversationListener;
+import com.example.chat_app.models.Conversation;
+import com.example.chat_app.models.User;
+import com.example.chat_app.repository.Repositories;
+import com.example.chat_app.utilities.AvatarCache;
 import com.example.chat_app.utilities.Constants;
+import com.example.chat_app.utilities.MetricsDumper;
 import com.example.chat_app.utilities.PreferenceManager;
-import com.google.firebase.firestore.DocumentReference;
-import com.google.firebase.firestore.FieldValue;
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.messaging.FirebaseMessaging;
+import com.example.chat_app.utilities.SubscriptionHub;
+import com.example.chat_app.utilities.UserRegistry;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 
-public class MainActivity extends AppCompatActivity {
+public class MainActivity extends AppCompatActivity implements ConversationListener {
+
+    private static final int RECENT_CONVERSATIONS_LIMIT = 30;
 
     private ActivityMainBinding binding;
     private PreferenceManager preferenceManager;
+    private final List<Conversation> conversations = new ArrayList<>();
+    private RecentConversationsAdapter conversationsAdapter;
+    private SubscriptionHub.Subscription<List<Conversation>> conversationsSubscription;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -36,8 +49,17 @@ public class MainActivity extends AppCompatActivity {
             preferenceManager = new PreferenceManager(getApplicationContext());
             loadUserDetails();
 
-            // Get the FCM token for push notifications
-            getToken();
+            // Make sure this user's document has the FCM token; free when it was written before
+            TokenRegistrar.getInstance(getApplicationContext()).ensureRegistered();
+
+            // Deliver messages that were still queued when the app was last closed
+            MessageOutbox.getInstance(getApplicationContext()).flush();
+
+            // Show the most recent conversations from the user's own index
+            listenConversations();
+
+            // Keep a dump of the performance metrics on disk
+            MetricsDumper.start(getApplicationContext());
 
             // Set click listeners for sign out button and new chat button
             setListeners();
@@ -46,11 +68,43 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        if (conversationsSubscription != null) {
+            conversationsSubscription.resume();
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (conversationsSubscription != null) {
+            conversationsSubscription.pause();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (conversationsSubscription != null) {
+            conversationsSubscription.remove();
+        }
+    }
+
     private void setListeners() {
         try {
             // Set click listener for the sign out button
             binding.imageSignOut.setOnClickListener(v -> signOut());
 
+            // Debug builds only: long press on the name opens the metrics screen
+            if (BuildConfig.DEBUG) {
+                binding.textName.setOnLongClickListener(v -> {
+                    startActivity(new Intent(getApplicationContext(), MetricsActivity.class));
+                    return true;
+                });
+            }
+
             // Set click listener for the new chat button to start the UsersActivity
             binding.fabNewChat.setOnClickListener(v -> {
                 startActivity(new Intent(getApplicationContext(), UsersActivity.class));
@@ -65,55 +119,91 @@ public class MainActivity extends AppCompatActivity {
         // Set the user's name on the text view
         binding.textName.setText(preferenceManager.getString(Constants.KEY_NAME));
 
-        // Decode the Base64 encoded image string into a byte array
-        byte[] bytes = Base64.decode(preferenceManager.getString(Constants.KEY_IMAGE), Base64.DEFAULT);
+        // Sessions started before avatars became blobs still hold the inline image, move it once.
+        // The picture is shown once the blob is written and its hash is known.
+        String legacyImage = preferenceManager.getString(Constants.KEY_IMAGE);
+        if (legacyImage != null) {
+            Repositories.sessions().migrateLegacyImage(preferenceManager.getString(Constants.KEY_USER_ID), legacyImage,
+                    (imageHash, error) -> {
+                        if (error != null) {
+                            // Until the blob is written the inline image is the only copy: kept for the next start
+                            Log.d("DEBUG", "Avatar migration failed: " + error.getMessage());
+                        } else {
+                            preferenceManager.edit(editor -> editor
+                                    .putString(Constants.KEY_IMAGE_HASH, imageHash)
+                                    .remove(Constants.KEY_IMAGE));
+                        }
+                        loadProfileImage();
+                    });
+            return;
+        }
+        loadProfileImage();
+    }
 
-        // Decode the byte array into a Bitmap and set it on the profile image view
-        Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-        binding.imageProfile.setImageBitmap(bitmap);
+    private void loadProfileImage() {
+        // Load the profile image in the background (or take it from the avatar cache) and show it
+        AvatarCache.getInstance(getApplicationContext())
+                .load(preferenceManager.getString(Constants.KEY_IMAGE_HASH), binding.imageProfile);
     }
 
-    private void showToast(String message) {
-        // Display a short toast message
-        Toast.makeText(getApplicationContext(), message, Toast.LENGTH_SHORT).show();
+    private void listenConversations() {
+        conversationsAdapter = new RecentConversationsAdapter(conversations, this);
+        binding.conversationsRecyclerView.setAdapter(conversationsAdapter);
+
+        // A handful of small documents, newest first, through the shared subscription hub:
+        // paused while the screen is hidden, and replayed at once after a rotation
+        String userId = preferenceManager.getString(Constants.KEY_USER_ID);
+        conversationsSubscription = SubscriptionHub.getInstance().subscribe(
+                Constants.KEY_COLLECTION_CONVERSATIONS + "/" + userId,
+                listener -> Repositories.messages().listenConversations(userId, RECENT_CONVERSATIONS_LIMIT, listener),
+                SubscriptionHub.latest(),
+                (value, error) -> {
+                    binding.progressBar.setVisibility(View.GONE);
+                    if (value == null) {
+                        return;
+                    }
+                    conversations.clear();
+                    conversations.addAll(value);
+                    conversationsAdapter.notifyDataSetChanged();
+                    binding.conversationsRecyclerView.setVisibility(conversations.isEmpty() ? View.GONE : View.VISIBLE);
+                });
     }
 
-    private void getToken() {
-        // Get the FCM token for the device to receive push notifications
-        FirebaseMessaging.getInstance().getToken().addOnSuccessListener(this::updateToken);
+    @Override
+    public void onConversationClicked(Conversation conversation) {
+        // Same hand-over as UsersActivity: the id, plus name and avatar hash as fallback
+        User user = new User();
+        user.id = conversation.peerId;
+        user.name = conversation.peerName;
+        user.imageHash = conversation.peerImageHash;
+        Intent intent = new Intent(getApplicationContext(), ChatActivity.class);
+        UserRegistry.putExtras(intent, user);
+        startActivity(intent);
     }
 
-    private void updateToken(String token) {
-        // Update the FCM token in the Firestore document for the current user
-        FirebaseFirestore database = FirebaseFirestore.getInstance();
-        DocumentReference documentReference =
-                database.collection(Constants.KEY_COLLECTION_USERS).document(
-                        preferenceManager.getString(Constants.KEY_USER_ID)
-                );
-        documentReference.update(Constants.KEY_FCM_TOKEN, token)
-                .addOnFailureListener(e -> showToast("Unable to update token"));
+    private void showToast(String message) {
+        // Display a short toast message
+        Toast.makeText(getApplicationContext(), message, Toast.LENGTH_SHORT).show();
     }
 
     private void signOut() {
         // Display a signing out message
         showToast("Signing out...");
 
-        // Update the FCM token in the Firestore document to delete it
-        FirebaseFirestore database = FirebaseFirestore.getInstance();
-        DocumentReference documentReference =
-                database.collection(Constants.KEY_COLLECTION_USERS).document(
-                        preferenceManager.getString(Constants.KEY_USER_ID)
-                );
-        HashMap<String, Object> updates = new HashMap<>();
-        updates.put(Constants.KEY_FCM_TOKEN, FieldValue.delete());
-        documentReference.update(updates)
-                .addOnSuccessListener(unused -> {
-                    // Clear user preferences, start the SignInActivity, and finish this activity
-                    preferenceManager.clear();
-                    startActivity(new Intent(getApplicationContext(), SignInActivity.class));
-                    finish();
-                })
-                .addOnFailureListener(e -> showToast("Unable to sign out"));
+        // Stop pushes to this device for the signed-in user
+        Repositories.sessions().signOut(preferenceManager.getString(Constants.KEY_USER_ID), (unused, error) -> {
+            if (error != null) {
+                showToast("Unable to sign out");
+                return;
+            }
+            // Clear user preferences, start the SignInActivity, and finish this activity.
+            // The stored messages go together with the sync watermarks that were cleared with the preferences.
+            preferenceManager.clear();
+            MessageStore messageStore = new MessageStore(getApplicationContext());
+            messageStore.execute(messageStore::clear);
+            startActivity(new Intent(getApplicationContext(), SignInActivity.class));
+            finish();
+        });
     }
 }
 /////////////////////////////////////
@@ -0,0 +1,50 @@
+package com.example.chat_app.activities;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.example.chat_app.databinding.ActivityMetricsBinding;
+import com.example.chat_app.metrics.Metrics;
+
+// Debug screen: the metrics registry as text, refreshed every second while visible.
+// Opened with a long press on the name in MainActivity in debug builds.
+public class MetricsActivity extends AppCompatActivity {
+
+    private static final long REFRESH_MILLIS = 1000;
+
+    private ActivityMetricsBinding binding;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            binding.textMetrics.setText(Metrics.dump());
+            handler.postDelayed(this, REFRESH_MILLIS);
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        binding = ActivityMetricsBinding.inflate(getLayoutInflater());
+        setContentView(binding.getRoot());
+
+        // Set click listener for the back button to navigate back
+        binding.imageBack.setOnClickListener(v -> onBackPressed());
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        handler.post(refresh);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        handler.removeCallbacks(refresh);
+    }
+}
@@ -10,10 +10,9 @@ import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.example.chat_app.databinding.ActivitySignInBinding;
+import com.example.chat_app.repository.Repositories;
 import com.example.chat_app.utilities.Constants;
 import com.example.chat_app.utilities.PreferenceManager;
-import com.google.firebase.firestore.DocumentSnapshot;
-import com.google.firebase.firestore.FirebaseFirestore;
 
 public class SignInActivity extends AppCompatActivity {
 
@@ -52,35 +51,28 @@ public class SignInActivity extends AppCompatActivity {
         // Show loading indicator
         loading(true);
 
-        // Access the Firestore database instance
-        FirebaseFirestore database = FirebaseFirestore.getInstance();
-
-        // Query the "users" collection for the provided email and password
-        database.collection(Constants.KEY_COLLECTION_USERS)
-                .whereEqualTo(Constants.KEY_EMAIL, binding.inputEmail.getText().toString())
-                .whereEqualTo(Constants.KEY_PASSWORD, binding.inputPassword.getText().toString())
-                .get()
-                .addOnCompleteListener(task -> {
-                    if (task.isSuccessful() && task.getResult() != null
-                            && !task.getResult().getDocuments().isEmpty()) {
-                        // Sign in successful, retrieve the user document
-                        DocumentSnapshot documentSnapshot = task.getResult().getDocuments().get(0);
-
-                        // Save user details to preference manager
-                        preferenceManager.putBoolean(Constants.KEY_IS_SIGNED_IN, true);
-                        preferenceManager.putString(Constants.KEY_USER_ID, documentSnapshot.getId());
-                        preferenceManager.putString(Constants.KEY_NAME, documentSnapshot.getString(Constants.KEY_NAME));
-                        preferenceManager.putString(Constants.KEY_IMAGE, documentSnapshot.getString(Constants.KEY_IMAGE));
-
-                        // Start the MainActivity and clear the back stack
-                        Intent intent = new Intent((getApplicationContext()), MainActivity.class);
-                        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
-                        startActivity(intent);
-                    } else {
+        // Check the credentials against the account's login entry
+        Repositories.sessions().signIn(
+                binding.inputEmail.getText().toString(),
+                binding.inputPassword.getText().toString(),
+                (user, error) -> {
+                    if (user == null) {
                         // Sign in failed, show error message and hide loading indicator
                         loading(false);
                         showToast("Unable to sign in");
+                        return;
                     }
+                    // Save user details to preference manager in one write
+                    preferenceManager.edit(editor -> editor
+                            .putBoolean(Constants.KEY_IS_SIGNED_IN, true)
+                            .putString(Constants.KEY_USER_ID, user.id)
+                            .putString(Constants.KEY_NAME, user.name)
+                            .putString(Constants.KEY_IMAGE_HASH, user.imageHash));
+
+                    // Start the MainActivity and clear the back stack
+                    Intent intent = new Intent((getApplicationContext()), MainActivity.class);
+                    intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+                    startActivity(intent);
                 });
     }
 
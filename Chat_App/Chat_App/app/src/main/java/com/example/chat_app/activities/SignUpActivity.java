@@ -1,12 +1,9 @@
 package com.example.chat_app.activities;
 
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
 import android.provider.MediaStore;
-import android.util.Base64;
 import android.util.Patterns;
 import android.view.View;
 import android.widget.Toast;
@@ -16,20 +13,23 @@ import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.example.chat_app.databinding.ActivitySignUpBinding;
+import com.example.chat_app.models.User;
+import com.example.chat_app.repository.Repositories;
+import com.example.chat_app.utilities.AvatarCache;
 import com.example.chat_app.utilities.Constants;
+import com.example.chat_app.utilities.ImageIngestion;
 import com.example.chat_app.utilities.PreferenceManager;
-import com.google.firebase.firestore.FirebaseFirestore;
 
-import java.io.ByteArrayOutputStream;
-import java.io.FileNotFoundException;
-import java.io.InputStream;
-import java.util.HashMap;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class SignUpActivity extends AppCompatActivity {
 
     private ActivitySignUpBinding binding;
     private PreferenceManager preferenceManager;
-    private String encodedImage;
+    private byte[] avatarBytes;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -41,6 +41,12 @@ public class SignUpActivity extends AppCompatActivity {
 
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        executor.shutdown();
+    }
+
     private void setListeners() {
         // Set click listener for "Sign In" text to go back to the previous activity (SignInActivity)
         binding.textSignIn.setOnClickListener(v -> onBackPressed());
@@ -68,49 +74,30 @@ public class SignUpActivity extends AppCompatActivity {
         // Show loading indicator
         loading(true);
 
-        // Access the Firestore database instance
-        FirebaseFirestore database = FirebaseFirestore.getInstance();
-
-        // Create a HashMap to store the user details
-        HashMap<String, Object> user = new HashMap<>();
-        user.put(Constants.KEY_NAME, binding.inputName.getText().toString());
-        user.put(Constants.KEY_EMAIL, binding.inputEmail.getText().toString());
-        user.put(Constants.KEY_PASSWORD, binding.inputPassword.getText().toString());
-        user.put(Constants.KEY_IMAGE, encodedImage);
-
-        // Add the user to the "users" collection in Firestore
-        database.collection(Constants.KEY_COLLECTION_USERS)
-                .add(user)
-                .addOnSuccessListener(documentReference -> {
-                    // Sign up successful, save user details to preference manager and start the MainActivity
-                    loading(false);
-                    preferenceManager.putBoolean(Constants.KEY_IS_SIGNED_IN, true);
-                    preferenceManager.putString(Constants.KEY_USER_ID, documentReference.getId());
-                    preferenceManager.putString(Constants.KEY_NAME, binding.inputName.getText().toString());
-                    preferenceManager.putString(Constants.KEY_IMAGE, encodedImage);
-                    Intent intent = new Intent(getApplicationContext(), MainActivity.class);
-                    intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
-                    startActivity(intent);
-                })
-                .addOnFailureListener(exception -> {
-                    // Sign up failed, show error message and hide loading indicator
-                    loading(false);
-                    showToast(exception.getMessage());
-                });
-    }
-
-    private String getEncodedImage(Bitmap bitmap) {
-        // Calculate the preview dimensions
-        int previewWidth = 150;
-        int previewHeight = bitmap.getHeight() * previewWidth / bitmap.getWidth();
-        // Create a scaled bitmap for the preview image
-        Bitmap previewBitmap = Bitmap.createScaledBitmap(bitmap, previewWidth, previewHeight, false);
-        // Compress the preview bitmap into a byte array
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        previewBitmap.compress(Bitmap.CompressFormat.JPEG, 50, byteArrayOutputStream);
-        byte[] bytes = byteArrayOutputStream.toByteArray();
-        // Encode the byte array as a Base64 string
-        return Base64.encodeToString(bytes, Base64.DEFAULT);
+        // Create the account: avatar, user and login entry are written together
+        User user = new User();
+        user.name = binding.inputName.getText().toString();
+        user.email = binding.inputEmail.getText().toString();
+        byte[] avatar = avatarBytes;
+        Repositories.sessions().signUp(user, binding.inputPassword.getText().toString(), avatar, (created, error) -> {
+            if (created == null) {
+                // Sign up failed, show error message and hide loading indicator
+                loading(false);
+                showToast(error == null ? "Unable to sign up" : error.getMessage());
+                return;
+            }
+            // Sign up successful, save user details to preference manager and start the MainActivity
+            loading(false);
+            AvatarCache.getInstance(getApplicationContext()).put(created.imageHash, avatar);
+            preferenceManager.edit(editor -> editor
+                    .putBoolean(Constants.KEY_IS_SIGNED_IN, true)
+                    .putString(Constants.KEY_USER_ID, created.id)
+                    .putString(Constants.KEY_NAME, created.name)
+                    .putString(Constants.KEY_IMAGE_HASH, created.imageHash));
+            Intent intent = new Intent(getApplicationContext(), MainActivity.class);
+            intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+            startActivity(intent);
+        });
     }
 
     // ActivityResultLauncher for handling the image selection activity result
@@ -119,25 +106,34 @@ public class SignUpActivity extends AppCompatActivity {
             result -> {
                 if (result.getResultCode() == RESULT_OK) {
                     if (result.getData() != null) {
-                        // Get the selected image URI and decode it into a Bitmap
+                        // Get the selected image URI and ingest it in the background
                         Uri imageUri = result.getData().getData();
-                        try {
-                            InputStream inputStream = getContentResolver().openInputStream(imageUri);
-                            Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
-                            // Set the selected image in the ImageView and store the encoded image
-                            binding.imageProfile.setImageBitmap(bitmap);
-                            binding.textAddImage.setVisibility(View.GONE);
-                            encodedImage = getEncodedImage(bitmap);
-                        } catch (FileNotFoundException e) {
-                            e.printStackTrace();
-                        }
+                        ingestImage(imageUri);
                     }
                 }
             }
     );
 
+    private void ingestImage(Uri imageUri) {
+        executor.execute(() -> {
+            try {
+                // Decode straight to avatar size, so even a 50 MP photo never lives in memory at full size
+                ImageIngestion.Result avatar = ImageIngestion.ingest(getContentResolver(), imageUri);
+                runOnUiThread(() -> {
+                    // Set the selected image in the ImageView and keep the encoded bytes for the upload
+                    binding.imageProfile.setImageBitmap(avatar.bitmap);
+                    binding.textAddImage.setVisibility(View.GONE);
+                    avatarBytes = avatar.bytes;
+                });
+            } catch (IOException e) {
+                e.printStackTrace();
+                runOnUiThread(() -> showToast("Unable to load image"));
+            }
+        });
+    }
+
     private Boolean isValidSignUpDetails() {
-        if (encodedImage == null) {
+        if (avatarBytes == null) {
             showToast("Select profile image");
             return false;
         } else if (binding.inputName.getText().toString().trim().isEmpty()) {
@@ -2,26 +2,47 @@ package com.example.chat_app.activities;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.View;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.Lifecycle;
 
 import com.example.chat_app.adapters.UsersAdapter;
+import com.example.chat_app.database.UserStore;
+import com.example.chat_app.database.UserSync;
 import com.example.chat_app.databinding.ActivityUsersBinding;
 import com.example.chat_app.listeners.UserListener;
+import com.example.chat_app.metrics.Histogram;
+import com.example.chat_app.metrics.Metrics;
 import com.example.chat_app.models.User;
 import com.example.chat_app.utilities.Constants;
 import com.example.chat_app.utilities.PreferenceManager;
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.example.chat_app.utilities.SubscriptionHub;
+import com.example.chat_app.utilities.UserRegistry;
+import com.example.chat_app.utilities.UserSearchIndex;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class UsersActivity extends AppCompatActivity implements UserListener {
 
+    private static final Histogram fetchTime = Metrics.histogram(Metrics.USERS_FETCH);
+
+    private static final int MAX_SEARCH_RESULTS = 100; // Best matches only; typing more narrows them down
+
     private ActivityUsersBinding binding;
     private PreferenceManager preferenceManager;
+    private UserStore userStore;
+    private UserSync userSync;
+    private UsersAdapter usersAdapter;
+    private SubscriptionHub.Subscription<List<User>> usersSubscription;
+    private UserSearchIndex searchIndex = new UserSearchIndex(); // Everyone but the current user
+    private boolean isSynced; // The listener delivered, so an empty directory really is empty
+    private List<User> queuedUsers; // Deltas that arrive while the first full directory is indexed off the main thread
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -29,64 +50,189 @@ public class UsersActivity extends AppCompatActivity implements UserListener {
         binding = ActivityUsersBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
         preferenceManager = new PreferenceManager((getApplicationContext()));
+        userStore = new UserStore(getApplicationContext());
+        userSync = new UserSync(getApplicationContext());
+        usersAdapter = new UsersAdapter(this);
+        binding.usersRecyclerView.setAdapter(usersAdapter);
         setListeners();
-        getUsers();
+        loadUsers();
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        if (usersSubscription != null) {
+            usersSubscription.resume();
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (usersSubscription != null) {
+            usersSubscription.pause();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (usersSubscription != null) {
+            usersSubscription.remove();
+        }
     }
 
     public void setListeners() {
         // Set click listener for the back button to navigate back
         binding.imageBack.setOnClickListener(v -> onBackPressed());
+
+        // Filter on every keystroke; the index answers in microseconds, so there is no debounce
+        binding.inputSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                showUsers();
+            }
+        });
     }
 
-    private void getUsers() {
+    private void loadUsers() {
         // Show loading indicator
         loading(true);
 
-        // Access the Firestore database instance
-        FirebaseFirestore database = FirebaseFirestore.getInstance();
-
-        // Get all users from the "users" collection in Firestore
-        database.collection(Constants.KEY_COLLECTION_USERS)
-                .get()
-                .addOnCompleteListener(task -> {
-                    // Hide loading indicator
-                    loading(false);
-
-                    // Get the current user ID from preferences
-                    String currentUserId = preferenceManager.getString(Constants.KEY_USER_ID);
-
-                    if (task.isSuccessful() && task.getResult() != null) {
-                        List<User> users = new ArrayList<>();
-                        for (QueryDocumentSnapshot queryDocumentSnapshot : task.getResult()) {
-                            // Skip the current user
-                            if (currentUserId.equals(queryDocumentSnapshot.getId())) {
-                                continue;
-                            }
-
-                            // Create a User object from the query document snapshot
-                            User user = new User();
-                            user.name = queryDocumentSnapshot.getString(Constants.KEY_NAME);
-                            user.email = queryDocumentSnapshot.getString(Constants.KEY_EMAIL);
-                            user.image = queryDocumentSnapshot.getString(Constants.KEY_IMAGE);
-                            user.token = queryDocumentSnapshot.getString(Constants.KEY_FCM_TOKEN);
-                            user.id = queryDocumentSnapshot.getId();
-                            users.add(user);
-                        }
+        // Render the cached directory first, then only ask for the profiles changed since it was synced
+        long startNanos = System.nanoTime();
+        userStore.execute(() -> {
+            List<User> cachedUsers = withoutCurrentUser(userStore.getUsers());
+            // The index over the cached directory is built here, off the main thread; deltas are merged in later
+            UserSearchIndex cachedIndex = new UserSearchIndex();
+            cachedIndex.putAll(cachedUsers);
+            runOnUiThread(() -> {
+                if (isFinishing()) {
+                    return;
+                }
+                searchIndex = cachedIndex;
+                if (!cachedUsers.isEmpty()) {
+                    // Remember the users so ChatActivity can resolve the selected one by id
+                    UserRegistry.getInstance().putAll(cachedUsers);
+                    showUsers();
+                }
+                listenUsers(startNanos);
+            });
+        });
+    }
 
-                        if (users.size() > 0) {
-                            // Create and set the UsersAdapter with the list of users
-                            UsersAdapter usersAdapter = new UsersAdapter(users, this);
-                            binding.usersRecyclerView.setAdapter(usersAdapter);
-                            binding.usersRecyclerView.setVisibility(View.VISIBLE);
-                        } else {
-                            // No users available, show error message
+    private void listenUsers(long startNanos) {
+        // One shared listener for the directory: coming back to this screen soon reuses it. It stores every
+        // delivery and starts at the stored watermark each time it attaches (see UserSync).
+        // The hub keeps the source for as long as the listener lives, so it captures locals, never this activity.
+        UserSync sync = userSync;
+        usersSubscription = SubscriptionHub.getInstance().subscribe(
+                Constants.KEY_COLLECTION_USERS,
+                sync::listen,
+                UsersActivity::collapseChanges,
+                (changedUsers, error) -> {
+                    if (!isSynced) {
+                        fetchTime.recordSince(startNanos);
+                        isSynced = true;
+                    }
+                    if (changedUsers == null) {
+                        // Error retrieving users: keep showing the cached directory, if any
+                        if (searchIndex.size() == 0 && queuedUsers == null) {
+                            loading(false);
                             showErrorMessage();
                         }
-                    } else {
-                        // Error retrieving users, show error message
-                        showErrorMessage();
+                        return;
                     }
+                    applyUsers(changedUsers);
                 });
+        if (!getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.STARTED)) {
+            usersSubscription.pause(); // Stopped while the cache was loading
+        }
+    }
+
+    // Deliveries are deltas: a late subscriber needs all of them, but only the latest version of each
+    // profile, so what a long-lived listener keeps is bounded by the size of the directory
+    private static List<User> collapseChanges(List<User> previous, List<User> delivery) {
+        Map<String, User> merged = new LinkedHashMap<>();
+        for (User user : previous) {
+            merged.put(user.id, user);
+        }
+        for (User user : delivery) {
+            merged.remove(user.id); // Moved to the end, in delivery order
+            merged.put(user.id, user);
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    // Merges changed profiles into the index and refreshes what is shown
+    private void applyUsers(List<User> changedUsers) {
+        List<User> others = withoutCurrentUser(changedUsers);
+
+        // Remember the users so ChatActivity can resolve the selected one by id
+        UserRegistry.getInstance().putAll(others);
+
+        if (queuedUsers != null) {
+            queuedUsers.addAll(others); // Merged in once the background index is ready
+            return;
+        }
+        if (searchIndex.size() == 0 && !others.isEmpty()) {
+            // Nothing was cached, so this is the whole directory: index it on the disk thread, like the cache
+            queuedUsers = new ArrayList<>();
+            userStore.execute(() -> {
+                UserSearchIndex fullIndex = new UserSearchIndex();
+                fullIndex.putAll(others);
+                runOnUiThread(() -> {
+                    if (isFinishing()) {
+                        return;
+                    }
+                    fullIndex.putAll(queuedUsers);
+                    queuedUsers = null;
+                    searchIndex = fullIndex;
+                    showUsers();
+                });
+            });
+            return;
+        }
+        searchIndex.putAll(others);
+        showUsers();
+    }
+
+    private List<User> withoutCurrentUser(List<User> users) {
+        String currentUserId = preferenceManager.getString(Constants.KEY_USER_ID);
+        List<User> others = new ArrayList<>(users.size());
+        for (User user : users) {
+            if (!currentUserId.equals(user.id)) {
+                others.add(user);
+            }
+        }
+        return others;
+    }
+
+    // The whole directory by name, or the ranked matches of the search box; the adapter diffs it
+    // against what it shows and only updates the rows that changed
+    private void showUsers() {
+        String query = binding.inputSearch.getText().toString();
+        usersAdapter.submitList(query.trim().isEmpty()
+                ? searchIndex.inNameOrder()
+                : searchIndex.search(query, MAX_SEARCH_RESULTS));
+
+        if (searchIndex.size() > 0) {
+            loading(false);
+            binding.textErrorMessage.setVisibility(View.GONE);
+            binding.usersRecyclerView.setVisibility(View.VISIBLE);
+        } else if (isSynced && queuedUsers == null) {
+            // No users available, show error message
+            loading(false);
+            showErrorMessage();
+        }
     }
 
     private void showErrorMessage() {
@@ -103,9 +249,10 @@ public class UsersActivity extends AppCompatActivity implements UserListener {
     }
 
     public void onUserClicked(User user) {
-        // Start the ChatActivity and pass the selected user
+        // Start the ChatActivity with the selected user's id; name and avatar hash are only
+        // read back if the registry was lost (e.g. the process was recreated)
         Intent intent = new Intent(getApplicationContext(), ChatActivity.class);
-        intent.putExtra(Constants.KEY_USER, user);
+        UserRegistry.putExtras(intent, user);
         startActivity(intent);
         finish();
     }
@@ -1,46 +1,97 @@
 package com.example.chat_app.adapters;
 
 import android.graphics.Bitmap;
+import android.graphics.Color;
 import android.view.LayoutInflater;
 import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.example.chat_app.R;
 import com.example.chat_app.databinding.ItemContainerReceivedMessageBinding;
 import com.example.chat_app.databinding.ItemContainerSentMessageBinding;
+import com.example.chat_app.listeners.MessageListener;
+import com.example.chat_app.metrics.Histogram;
+import com.example.chat_app.metrics.Metrics;
 import com.example.chat_app.models.ChatMessage;
-
-import java.util.List;
+import com.example.chat_app.utilities.MessageDateFormatter;
+import com.example.chat_app.utilities.MessageLog;
+import com.example.chat_app.utilities.MessageViewTypes;
 
 public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {  //will be used to show all the chat messages.
 
+    private static final Histogram bindTime = Metrics.histogram(Metrics.CHAT_BIND);
+
     // class will work with the list of the chat messages , the picture of the message receiver and hes id.
-    private final List<ChatMessage> chatMessages;
-    private final Bitmap receiverProfileImage;
+    private final MessageLog chatMessages;
+    private Bitmap receiverProfileImage;
     private final String senderId;
+    private final MessageListener messageListener;
+    private final MessageDateFormatter dateFormatter = new MessageDateFormatter();
+    private ChatMessage highlightedMessage; // The search result jumped to, if any
 
     //Setting two types of messages - sent and received.
-    public static final int VIEW_TYPE_SENT = 1;
-    public static final int VIEW_TYPE_RECEIVED = 2;
+    public static final int VIEW_TYPE_SENT = MessageViewTypes.VIEW_TYPE_SENT;
+    public static final int VIEW_TYPE_RECEIVED = MessageViewTypes.VIEW_TYPE_RECEIVED;
 
-    public ChatAdapter(List<ChatMessage> chatMessages, Bitmap receiverProfileImage, String senderId) {
+    public ChatAdapter(MessageLog chatMessages, Bitmap receiverProfileImage, String senderId,
+                       MessageListener messageListener) {
         this.chatMessages = chatMessages;
         this.receiverProfileImage = receiverProfileImage;
         this.senderId = senderId;
+        this.messageListener = messageListener;
+    }
+
+    // The avatar is decoded in the background, so it can arrive after the first messages are shown
+    public void setReceiverProfileImage(Bitmap receiverProfileImage) {
+        this.receiverProfileImage = receiverProfileImage;
+        notifyItemRangeChanged(0, getItemCount());
+    }
+
+    // Marks the message a search jumped to; only its row and the previously marked one are rebound
+    public void setHighlightedMessage(ChatMessage chatMessage) {
+        notifyHighlightChanged();
+        highlightedMessage = chatMessage;
+        notifyHighlightChanged();
+    }
+
+    private void notifyHighlightChanged() {
+        int position = highlightedMessage == null ? -1 : chatMessages.positionOf(highlightedMessage);
+        if (position >= 0) {
+            notifyItemChanged(position);
+        }
+    }
+
+    // Compares the timestamp column first, so binding the other rows does not materialize their ids
+    private boolean isHighlighted(int position) {
+        return highlightedMessage != null
+                && chatMessages.getTimestamp(position) == highlightedMessage.timestamp
+                && chatMessages.getId(position).equals(highlightedMessage.id);
     }
 
     @NonNull
     @Override
     public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         if (viewType == VIEW_TYPE_SENT) {
-            return new SentMessageViewHolder(
+            SentMessageViewHolder holder = new SentMessageViewHolder(
                     ItemContainerSentMessageBinding.inflate(
                             LayoutInflater.from(parent.getContext()),
                             parent,
                             false
                     )
             );
+            // Our own messages can be edited or deleted once Firestore has them
+            holder.itemView.setOnLongClickListener(v -> {
+                int position = holder.getAdapterPosition();
+                if (position == RecyclerView.NO_POSITION || chatMessages.isPending(position)) {
+                    return false;
+                }
+                messageListener.onMessageLongClicked(chatMessages.get(position));
+                return true;
+            });
+            return holder;
         } else {
             return new ReceivedMessageViewHolder(
                     ItemContainerReceivedMessageBinding.inflate(
@@ -54,11 +105,22 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
 
     @Override
     public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+        long startNanos = System.nanoTime();
+        // Read the columns of the row directly, no ChatMessage is materialized while scrolling
+        String message = chatMessages.getMessage(position);
+        String dateTime = dateFormatter.format(chatMessages.getTimestamp(position));
+        if (chatMessages.getEditedAt(position) != 0) {
+            dateTime = holder.itemView.getContext().getString(R.string.message_edited, dateTime);
+        }
         if (getItemViewType(position) == VIEW_TYPE_SENT) {
-            ((SentMessageViewHolder) holder).setData(chatMessages.get(position));
+            ((SentMessageViewHolder) holder).setData(message, dateTime, chatMessages.isPending(position));
         } else {
-            ((ReceivedMessageViewHolder) holder).setData(chatMessages.get(position), receiverProfileImage);
+            ((ReceivedMessageViewHolder) holder).setData(message, dateTime, receiverProfileImage);
         }
+        holder.itemView.setBackgroundColor(isHighlighted(position)
+                ? ContextCompat.getColor(holder.itemView.getContext(), R.color.search_result_background)
+                : Color.TRANSPARENT);
+        bindTime.recordSince(startNanos);
     }
 
     @Override
@@ -67,11 +129,7 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
     }
 
     public int getItemViewType(int position) {
-        if (chatMessages.get(position).senderId.equals(senderId)) {
-            return VIEW_TYPE_SENT;
-        } else {
-            return VIEW_TYPE_RECEIVED;
-        }
+        return MessageViewTypes.resolve(chatMessages.getSenderId(position), senderId);
     }
 
     static class SentMessageViewHolder extends RecyclerView.ViewHolder {
@@ -82,9 +140,11 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
             binding = itemContainerSentMessageBinding;
         }
 
-        void setData(ChatMessage chatMessage) {
-            binding.textMessage.setText(chatMessage.message);
-            binding.textDateTime.setText(chatMessage.dateTime);
+        void setData(String message, String dateTime, boolean pending) {
+            binding.textMessage.setText(message);
+            binding.textDateTime.setText(dateTime);
+            // Messages still waiting in the outbox are dimmed until Firestore accepted them
+            binding.textMessage.setAlpha(pending ? 0.6f : 1f);
         }
     }
 
@@ -96,9 +156,9 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
             binding = itemContainerReceivedMessageBinding;
         }
 
-        void setData(ChatMessage chatMessage, Bitmap receivedProfileImage) {
-            binding.textMessage.setText(chatMessage.message);
-            binding.textDateTime.setText(chatMessage.dateTime);
+        void setData(String message, String dateTime, Bitmap receivedProfileImage) {
+            binding.textMessage.setText(message);
+            binding.textDateTime.setText(dateTime);
             binding.imageProfile.setImageBitmap(receivedProfileImage);
         }
     }
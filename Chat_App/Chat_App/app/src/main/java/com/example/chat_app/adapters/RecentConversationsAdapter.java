@@ -0,0 +1,73 @@
+package com.example.chat_app.adapters;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.chat_app.databinding.ItemContainerRecentConversationBinding;
+import com.example.chat_app.listeners.ConversationListener;
+import com.example.chat_app.models.Conversation;
+import com.example.chat_app.utilities.AvatarCache;
+
+import java.util.List;
+
+public class RecentConversationsAdapter extends RecyclerView.Adapter<RecentConversationsAdapter.ConversationViewHolder> {
+
+    private final List<Conversation> conversations;
+    private final ConversationListener conversationListener;
+
+    public RecentConversationsAdapter(List<Conversation> conversations, ConversationListener conversationListener) {
+        this.conversations = conversations;
+        this.conversationListener = conversationListener;
+    }
+
+    @NonNull
+    @Override
+    public ConversationViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        return new ConversationViewHolder(
+                ItemContainerRecentConversationBinding.inflate(
+                        LayoutInflater.from(parent.getContext()),
+                        parent,
+                        false
+                )
+        );
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ConversationViewHolder holder, int position) {
+        holder.setData(conversations.get(position));
+    }
+
+    @Override
+    public int getItemCount() {
+        return conversations.size();
+    }
+
+    class ConversationViewHolder extends RecyclerView.ViewHolder {
+
+        ItemContainerRecentConversationBinding binding;
+
+        ConversationViewHolder(ItemContainerRecentConversationBinding itemContainerRecentConversationBinding) {
+            super(itemContainerRecentConversationBinding.getRoot());
+            binding = itemContainerRecentConversationBinding;
+        }
+
+        void setData(Conversation conversation) {
+            binding.textName.setText(conversation.peerName);
+            binding.textRecentMessage.setText(conversation.lastMessage);
+            if (conversation.unreadCount > 0) {
+                binding.textUnreadCount.setText(String.valueOf(conversation.unreadCount));
+                binding.textUnreadCount.setVisibility(View.VISIBLE);
+            } else {
+                binding.textUnreadCount.setVisibility(View.GONE);
+            }
+            AvatarCache.getInstance(binding.getRoot().getContext()).load(conversation.peerImageHash, binding.imageProfile);
+            binding.getRoot().setOnClickListener(v -> conversationListener.onConversationClicked(conversation));
+        }
+    }
+}
+
+// Binds the entries of the signed-in user's conversation index (see ConversationIndex) to the home screen list.
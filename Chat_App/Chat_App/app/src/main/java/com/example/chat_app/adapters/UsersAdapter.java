@@ -1,30 +1,55 @@
 package com.example.chat_app.adapters;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.util.Base64;
 import android.view.LayoutInflater;
 import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import java.util.List;
+import java.util.Objects;
 
 import com.example.chat_app.databinding.ItemContainerUserBinding;
 import com.example.chat_app.listeners.UserListener;
+import com.example.chat_app.metrics.Histogram;
+import com.example.chat_app.metrics.Metrics;
 import com.example.chat_app.models.User;
+import com.example.chat_app.utilities.AvatarCache;
 
 public class UsersAdapter extends RecyclerView.Adapter<UsersAdapter.UserViewHolder> {
 
-    private final List<User> users;
+    private static final Histogram bindTime = Metrics.histogram(Metrics.USERS_BIND);
+
+    // Same user when the id matches; rebound only when something shown on the row changed
+    private static final DiffUtil.ItemCallback<User> DIFF_CALLBACK = new DiffUtil.ItemCallback<User>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull User oldUser, @NonNull User newUser) {
+            return oldUser.id.equals(newUser.id);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull User oldUser, @NonNull User newUser) {
+            return Objects.equals(oldUser.name, newUser.name)
+                    && Objects.equals(oldUser.email, newUser.email)
+                    && Objects.equals(oldUser.imageHash, newUser.imageHash);
+        }
+    };
+
+    // Lists are diffed on a background thread and only the changed rows are notified
+    private final AsyncListDiffer<User> users = new AsyncListDiffer<>(this, DIFF_CALLBACK);
     private final UserListener userListener;
 
-    public UsersAdapter(List<User> users, UserListener userListener) {
-        this.users = users;
+    public UsersAdapter(UserListener userListener) {
         this.userListener = userListener;
     }
 
+    // The list must not be modified afterwards, it is diffed against the next one
+    public void submitList(List<User> newUsers) {
+        users.submitList(newUsers);
+    }
+
     @NonNull
     @Override
     public UserViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -38,12 +63,14 @@ public class UsersAdapter extends RecyclerView.Adapter<UsersAdapter.UserViewHold
 
     @Override
     public void onBindViewHolder(@NonNull UserViewHolder holder, int position) {
-        holder.setUserData(users.get(position));
+        long startNanos = System.nanoTime();
+        holder.setUserData(users.getCurrentList().get(position));
+        bindTime.recordSince(startNanos);
     }
 
     @Override
     public int getItemCount() {
-        return users.size();
+        return users.getCurrentList().size();
     }
 
     class UserViewHolder extends RecyclerView.ViewHolder {
@@ -58,18 +85,14 @@ public class UsersAdapter extends RecyclerView.Adapter<UsersAdapter.UserViewHold
         void setUserData(User user) {
             binding.textName.setText(user.name);
             binding.textEmail.setText(user.email);
-            binding.imageProfile.setImageBitmap(getUserImage(user.image));
+            // Decoded once off the main thread, then served from the shared avatar cache
+            AvatarCache.getInstance(binding.getRoot().getContext()).load(user.imageHash, binding.imageProfile);
             binding.getRoot().setOnClickListener(v -> userListener.onUserClicked(user));
         }
     }
-
-    private Bitmap getUserImage(String encodedImage) {
-        byte[] bytes = Base64.decode(encodedImage, Base64.DEFAULT);
-        return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-    }
 }
 
 //This is an Android RecyclerView adapter called UsersAdapter. It is used to display a list of users in the chat application.
 
 // this UsersAdapter is responsible for binding the list of User objects to the RecyclerView. It creates ViewHolders,
-// binds the data to the views, and handles the image decoding for the user's profile picture.
\ No newline at end of file
+// binds the data to the views, and hands the user's profile picture to the shared AvatarCache.
\ No newline at end of file
@@ -0,0 +1,159 @@
+package com.example.chat_app.database;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+public class ChatDatabase extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "chat_app.db";
+    private static final int DATABASE_VERSION = 7;
+
+    public static final String TABLE_MESSAGES = "messages";
+    public static final String COLUMN_ID = "id";
+    public static final String COLUMN_CONVERSATION_ID = "conversation_id";
+    public static final String COLUMN_SENDER_ID = "sender_id";
+    public static final String COLUMN_RECEIVER_ID = "receiver_id";
+    public static final String COLUMN_MESSAGE = "message";
+    public static final String COLUMN_TIMESTAMP = "timestamp";
+    public static final String COLUMN_EDITED_AT = "edited_at"; // 0 when never edited
+
+    // Full-text index over the stored message bodies. External content: it holds only the index and reads
+    // the text from messages, matched by rowid, and triggers keep it in step with every insert, edit and delete.
+    // The conversation id is indexed as well (its two user ids are its words), so a search names its
+    // conversation in the MATCH itself and never gathers the matches of every other conversation first.
+    // The rowids of messages must stay stable for that, which holds as long as the database is never VACUUMed.
+    public static final String TABLE_MESSAGES_FTS = "messages_fts";
+
+    // Per conversation, the (timestamp, id) from which the messages table holds every message up to the
+    // sync watermark. Rows before it (e.g. single pushed messages) may have gaps between them and are not read.
+    // (0, "") when the whole history is stored; no row when nothing is known to be complete yet.
+    public static final String TABLE_HISTORY = "history";
+
+    // Same columns as messages: outgoing messages wait here until Firestore has them
+    public static final String TABLE_OUTBOX = "outbox";
+
+    // Cached user directory, synced by the profiles' updatedAt
+    public static final String TABLE_USERS = "users";
+    public static final String COLUMN_NAME = "name";
+    public static final String COLUMN_EMAIL = "email";
+    public static final String COLUMN_IMAGE_HASH = "image_hash";
+    public static final String COLUMN_UPDATED_AT = "updated_at";
+
+    private static ChatDatabase instance;
+
+    // One helper per process, so every screen shares the same connection
+    public static synchronized ChatDatabase getInstance(Context context) {
+        if (instance == null) {
+            instance = new ChatDatabase(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ChatDatabase(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        // Messages are keyed by their Firestore document id so re-delivered documents are ignored
+        createMessageTable(db, TABLE_MESSAGES);
+
+        // Every read is "one conversation, ordered by time", so index exactly that
+        db.execSQL("CREATE INDEX index_messages_conversation_timestamp ON " + TABLE_MESSAGES
+                + " (" + COLUMN_CONVERSATION_ID + ", " + COLUMN_TIMESTAMP + ")");
+
+        createMessageTable(db, TABLE_OUTBOX);
+        createUserTable(db);
+        createMessageSearchIndex(db);
+        createHistoryTable(db);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Step through the versions so unsent messages in the outbox survive upgrades
+        if (oldVersion < 2) {
+            createMessageTable(db, TABLE_OUTBOX); // Created with the current columns
+        }
+        if (oldVersion < 3) {
+            addEditedAtColumn(db, TABLE_MESSAGES);
+            if (oldVersion == 2) {
+                addEditedAtColumn(db, TABLE_OUTBOX);
+            }
+        }
+        if (oldVersion < 4) {
+            createUserTable(db);
+        }
+        if (oldVersion < 6) {
+            // Nothing stored so far is known to be complete; each conversation starts a new run when it syncs
+            createHistoryTable(db);
+        }
+        if (oldVersion < 7) {
+            // The search index came with 5 and got its conversation column with 7
+            if (oldVersion >= 5) {
+                dropMessageSearchIndex(db);
+            }
+            createMessageSearchIndex(db);
+            // Index the history stored so far, once
+            db.execSQL("INSERT INTO " + TABLE_MESSAGES_FTS + "(" + TABLE_MESSAGES_FTS + ") VALUES('rebuild')");
+        }
+    }
+
+    private void createMessageTable(SQLiteDatabase db, String table) {
+        db.execSQL("CREATE TABLE " + table + " ("
+                + COLUMN_ID + " TEXT PRIMARY KEY, "
+                + COLUMN_CONVERSATION_ID + " TEXT NOT NULL, "
+                + COLUMN_SENDER_ID + " TEXT, "
+                + COLUMN_RECEIVER_ID + " TEXT, "
+                + COLUMN_MESSAGE + " TEXT, "
+                + COLUMN_TIMESTAMP + " INTEGER NOT NULL, "
+                + COLUMN_EDITED_AT + " INTEGER NOT NULL DEFAULT 0)");
+    }
+
+    private void createUserTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_USERS + " ("
+                + COLUMN_ID + " TEXT PRIMARY KEY, "
+                + COLUMN_NAME + " TEXT, "
+                + COLUMN_EMAIL + " TEXT, "
+                + COLUMN_IMAGE_HASH + " TEXT, "
+                + COLUMN_UPDATED_AT + " INTEGER NOT NULL DEFAULT 0)");
+    }
+
+    private void createHistoryTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_HISTORY + " ("
+                + COLUMN_CONVERSATION_ID + " TEXT PRIMARY KEY, "
+                + COLUMN_TIMESTAMP + " INTEGER NOT NULL, "
+                + COLUMN_ID + " TEXT NOT NULL)");
+    }
+
+    private void createMessageSearchIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE " + TABLE_MESSAGES_FTS + " USING fts4("
+                + "content=\"" + TABLE_MESSAGES + "\", " + COLUMN_CONVERSATION_ID + ", " + COLUMN_MESSAGE
+                + ", tokenize=unicode61)");
+
+        // The old text has to be removed from the index before the row changes, the new text added after
+        String deleteOld = "DELETE FROM " + TABLE_MESSAGES_FTS + " WHERE docid = old.rowid;";
+        String insertNew = "INSERT INTO " + TABLE_MESSAGES_FTS + "(docid, " + COLUMN_CONVERSATION_ID + ", " + COLUMN_MESSAGE
+                + ") VALUES (new.rowid, new." + COLUMN_CONVERSATION_ID + ", new." + COLUMN_MESSAGE + ");";
+        db.execSQL("CREATE TRIGGER messages_fts_after_insert AFTER INSERT ON " + TABLE_MESSAGES
+                + " BEGIN " + insertNew + " END");
+        db.execSQL("CREATE TRIGGER messages_fts_before_update BEFORE UPDATE OF " + COLUMN_MESSAGE + " ON " + TABLE_MESSAGES
+                + " BEGIN " + deleteOld + " END");
+        db.execSQL("CREATE TRIGGER messages_fts_after_update AFTER UPDATE OF " + COLUMN_MESSAGE + " ON " + TABLE_MESSAGES
+                + " BEGIN " + insertNew + " END");
+        db.execSQL("CREATE TRIGGER messages_fts_before_delete BEFORE DELETE ON " + TABLE_MESSAGES
+                + " BEGIN " + deleteOld + " END");
+    }
+
+    private void dropMessageSearchIndex(SQLiteDatabase db) {
+        db.execSQL("DROP TRIGGER messages_fts_after_insert");
+        db.execSQL("DROP TRIGGER messages_fts_before_update");
+        db.execSQL("DROP TRIGGER messages_fts_after_update");
+        db.execSQL("DROP TRIGGER messages_fts_before_delete");
+        db.execSQL("DROP TABLE " + TABLE_MESSAGES_FTS);
+    }
+
+    private void addEditedAtColumn(SQLiteDatabase db, String table) {
+        db.execSQL("ALTER TABLE " + table + " ADD COLUMN " + COLUMN_EDITED_AT + " INTEGER NOT NULL DEFAULT 0");
+    }
+}
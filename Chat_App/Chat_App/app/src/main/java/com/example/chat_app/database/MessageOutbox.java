@@ -0,0 +1,210 @@
+package com.example.chat_app.database;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.chat_app.models.ChatMessage;
+import com.example.chat_app.models.User;
+import com.example.chat_app.repository.MessageRepository;
+import com.example.chat_app.repository.Repositories;
+import com.example.chat_app.utilities.Constants;
+import com.example.chat_app.utilities.PreferenceManager;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Durable queue of outgoing messages.
+// A message is written to the outbox table before anything else, so it survives the app being killed.
+// Messages typed in quick succession are sent together in one WriteBatch, and every message is written
+// to the document id it got on this device, so retrying a batch after a failure never creates duplicates.
+// Only transient failures are retried: a message the server rejects for good (e.g. denied by the security
+// rules, or too large) is dropped and reported, instead of holding back everything queued behind it.
+// The outbox table is only read and written on MessageStore's disk thread, so its inserts and deletes stay
+// ordered with the messages MessageSync stores: a confirmed message never lingers in the outbox to be resent.
+public class MessageOutbox {
+
+    public interface Listener {
+        // Called on the main thread once Firestore accepted the messages
+        void onMessagesSent(List<ChatMessage> chatMessages);
+
+        // Called on the main thread for messages Firestore rejected for good; they left the outbox
+        void onMessagesFailed(List<ChatMessage> chatMessages);
+    }
+
+    // Firestore caps a batch at 500 writes; each message may also touch two conversation index entries
+    private static final int MAX_MESSAGES_PER_BATCH = 500 / 3;
+    private static final long FLUSH_DELAY_MILLIS = 100; // Long enough to coalesce a burst of sends
+    private static final long MIN_RETRY_DELAY_MILLIS = 1000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 60 * 1000;
+
+    private static MessageOutbox instance;
+
+    private final MessageStore messageStore;
+    private final MessageRepository messageRepository;
+    private final PreferenceManager preferenceManager;
+    // Every field below is only touched on this thread, so none of them need locking.
+    // Store calls hop to the disk thread and come back here with their result.
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private boolean flushScheduled;
+    private boolean flushing;
+    private long retryDelayMillis = MIN_RETRY_DELAY_MILLIS;
+    // After a batch was rejected for good, messages are sent one at a time until the rejected one is found
+    private int isolateRemaining;
+
+    public static synchronized MessageOutbox getInstance(Context context) {
+        if (instance == null) {
+            instance = new MessageOutbox(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private MessageOutbox(Context context) {
+        messageStore = new MessageStore(context);
+        messageRepository = Repositories.messages();
+        preferenceManager = new PreferenceManager(context);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // The message must already carry its final document id (see ChatActivity.sendMessage)
+    public void enqueue(ChatMessage chatMessage) {
+        messageStore.execute(() -> {
+            messageStore.addToOutbox(chatMessage);
+            executor.execute(() -> scheduleFlush(FLUSH_DELAY_MILLIS));
+        });
+    }
+
+    // Delivers whatever an earlier session left behind
+    public void flush() {
+        executor.execute(() -> scheduleFlush(0));
+    }
+
+    private void scheduleFlush(long delayMillis) {
+        if (flushScheduled) {
+            return;
+        }
+        flushScheduled = true;
+        executor.schedule(this::flushNow, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void flushNow() {
+        flushScheduled = false;
+        if (flushing) {
+            return; // The running flush checks the outbox again when it completes
+        }
+        // Flushing until the outbox reflects the outcome, so no flush reads a batch that is still in flight
+        flushing = true;
+        int limit = isolateRemaining > 0 ? 1 : MAX_MESSAGES_PER_BATCH;
+        messageStore.execute(() -> {
+            List<ChatMessage> pending = messageStore.getOutbox(limit);
+            executor.execute(() -> send(pending));
+        });
+    }
+
+    private void send(List<ChatMessage> pending) {
+        if (pending.isEmpty()) {
+            // A message added after the read schedules its own flush, which runs after this
+            flushing = false;
+            return;
+        }
+        // One atomic write for the messages and both participants' conversation index entries
+        messageRepository.sendMessages(pending, currentUser(), (unused, error) -> executor.execute(() -> {
+            if (error != null && !isRetryable(error)) {
+                onRejected(pending);
+                return;
+            }
+            if (error != null) {
+                // Back off exponentially so a failing batch does not spin
+                flushing = false;
+                scheduleFlush(retryDelayMillis);
+                retryDelayMillis = Math.min(retryDelayMillis * 2, MAX_RETRY_DELAY_MILLIS);
+                return;
+            }
+            retryDelayMillis = MIN_RETRY_DELAY_MILLIS;
+            if (isolateRemaining > 0) {
+                isolateRemaining--;
+            }
+            messageStore.execute(() -> {
+                messageStore.markSent(pending);
+                executor.execute(() -> {
+                    flushing = false;
+                    for (ChatMessage chatMessage : pending) {
+                        chatMessage.pending = false;
+                    }
+                    mainHandler.post(() -> {
+                        for (Listener listener : listeners) {
+                            listener.onMessagesSent(pending);
+                        }
+                    });
+                    // Messages queued while this batch was in flight
+                    scheduleFlush(0);
+                });
+            });
+        }));
+    }
+
+    // A batch is all or nothing, so one bad message fails all of them: send them one at a time to find it
+    private void onRejected(List<ChatMessage> pending) {
+        if (pending.size() > 1) {
+            flushing = false;
+            isolateRemaining = pending.size();
+            scheduleFlush(0);
+            return;
+        }
+        isolateRemaining = 0;
+        messageStore.execute(() -> {
+            messageStore.removeFromOutbox(pending);
+            executor.execute(() -> {
+                flushing = false;
+                mainHandler.post(() -> {
+                    for (Listener listener : listeners) {
+                        listener.onMessagesFailed(pending);
+                    }
+                });
+                scheduleFlush(0);
+            });
+        });
+    }
+
+    // Failures that can go away by themselves (offline, server busy, contention) are worth retrying;
+    // anything else is the same on every attempt
+    private static boolean isRetryable(Exception error) {
+        if (!(error instanceof FirebaseFirestoreException)) {
+            return true;
+        }
+        switch (((FirebaseFirestoreException) error).getCode()) {
+            case PERMISSION_DENIED:
+            case INVALID_ARGUMENT:
+            case NOT_FOUND:
+            case ALREADY_EXISTS:
+            case FAILED_PRECONDITION:
+            case OUT_OF_RANGE:
+            case UNIMPLEMENTED:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    // Our own profile as the receiver's index entry shows it
+    private User currentUser() {
+        User user = new User();
+        user.id = preferenceManager.getString(Constants.KEY_USER_ID);
+        user.name = preferenceManager.getString(Constants.KEY_NAME);
+        user.imageHash = preferenceManager.getString(Constants.KEY_IMAGE_HASH);
+        return user;
+    }
+}
@@ -0,0 +1,390 @@
+package com.example.chat_app.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.chat_app.models.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// On-device copy of every message we have seen, grouped by conversation.
+// Only the complete part of a conversation's history is read back: the messages from its history start
+// (see ChatDatabase.TABLE_HISTORY) on. Older rows may have gaps, so paging beyond it goes to the server.
+// All methods touch the disk, so call them from a background thread (see execute()).
+public class MessageStore {
+
+    // Single shared disk thread keeps reads and writes ordered and off the main thread
+    private static final ExecutorService diskExecutor = Executors.newSingleThreadExecutor();
+
+    private static final String ORDER_NEWEST_FIRST =
+            ChatDatabase.COLUMN_TIMESTAMP + " DESC, " + ChatDatabase.COLUMN_ID + " DESC";
+    private static final String ORDER_OLDEST_FIRST =
+            ChatDatabase.COLUMN_TIMESTAMP + " ASC, " + ChatDatabase.COLUMN_ID + " ASC";
+    // Rows at or after the history start, see historyArgs()
+    // Search reads at most this many of the newest stored matches before ordering them by time, so a
+    // common word in a long conversation still answers at once; older matches are out of reach
+    private static final int MAX_SEARCH_MATCHES = 1000;
+    // A last word shorter than this is looked for as a whole word: a one-letter prefix matches nearly everything
+    private static final int MIN_PREFIX_LENGTH = 2;
+    private static final String IN_HISTORY = " AND (" + ChatDatabase.COLUMN_TIMESTAMP + " > ? OR ("
+            + ChatDatabase.COLUMN_TIMESTAMP + " = ? AND " + ChatDatabase.COLUMN_ID + " >= ?))";
+
+    private final ChatDatabase chatDatabase;
+
+    public MessageStore(Context context) {
+        chatDatabase = ChatDatabase.getInstance(context);
+    }
+
+    public void execute(Runnable runnable) {
+        diskExecutor.execute(runnable);
+    }
+
+    // Newest page of a conversation, returned oldest first
+    public List<ChatMessage> getLatestMessages(String conversationId, int limit) {
+        ChatMessage historyStart = getHistoryStart(conversationId);
+        if (historyStart == null) {
+            return new ArrayList<>();
+        }
+        List<ChatMessage> chatMessages = queryPage(
+                ChatDatabase.COLUMN_CONVERSATION_ID + " = ?" + IN_HISTORY,
+                historyArgs(historyStart, conversationId),
+                ORDER_NEWEST_FIRST,
+                limit);
+        Collections.reverse(chatMessages);
+        return chatMessages;
+    }
+
+    // Page of messages that sort strictly before the given one, returned oldest first. Shorter than limit
+    // once the history start is reached; unless isHistoryComplete(), the server has the rest.
+    public List<ChatMessage> getMessagesBefore(String conversationId, ChatMessage before, int limit) {
+        ChatMessage historyStart = getHistoryStart(conversationId);
+        if (historyStart == null) {
+            return new ArrayList<>();
+        }
+        String timestamp = String.valueOf(before.timestamp);
+        List<ChatMessage> chatMessages = queryPage(
+                ChatDatabase.COLUMN_CONVERSATION_ID + " = ? AND (" + ChatDatabase.COLUMN_TIMESTAMP + " < ? OR ("
+                        + ChatDatabase.COLUMN_TIMESTAMP + " = ? AND " + ChatDatabase.COLUMN_ID + " < ?))" + IN_HISTORY,
+                historyArgs(historyStart, conversationId, timestamp, timestamp, before.id),
+                ORDER_NEWEST_FIRST,
+                limit);
+        Collections.reverse(chatMessages);
+        return chatMessages;
+    }
+
+    // Page of messages that sort strictly after the given one, returned oldest first
+    public List<ChatMessage> getMessagesAfter(String conversationId, ChatMessage after, int limit) {
+        String timestamp = String.valueOf(after.timestamp);
+        return queryPage(
+                ChatDatabase.COLUMN_CONVERSATION_ID + " = ? AND (" + ChatDatabase.COLUMN_TIMESTAMP + " > ? OR ("
+                        + ChatDatabase.COLUMN_TIMESTAMP + " = ? AND " + ChatDatabase.COLUMN_ID + " > ?))",
+                new String[]{conversationId, timestamp, timestamp, after.id},
+                ORDER_OLDEST_FIRST,
+                limit);
+    }
+
+    // Newest messages of a conversation containing every word of the query, the last word as a prefix.
+    // Answered by the full-text index (see ChatDatabase.TABLE_MESSAGES_FTS), scoped to the conversation in the
+    // MATCH and capped at MAX_SEARCH_MATCHES: no message body is read apart from the ones returned.
+    // Messages still in the outbox are not indexed.
+    public List<ChatMessage> searchMessages(String conversationId, String query, int limit) {
+        String matchExpression = toMatchExpression(conversationId, query);
+        ChatMessage historyStart = getHistoryStart(conversationId);
+        if (matchExpression == null || historyStart == null) {
+            return new ArrayList<>();
+        }
+        List<ChatMessage> chatMessages = new ArrayList<>();
+        SQLiteDatabase db = chatDatabase.getReadableDatabase();
+        try (Cursor cursor = db.rawQuery("SELECT * FROM " + ChatDatabase.TABLE_MESSAGES
+                        + " WHERE rowid IN (SELECT docid FROM " + ChatDatabase.TABLE_MESSAGES_FTS
+                        + " WHERE " + ChatDatabase.TABLE_MESSAGES_FTS + " MATCH ?"
+                        + " ORDER BY docid DESC LIMIT " + MAX_SEARCH_MATCHES + ")"
+                        + " AND " + ChatDatabase.COLUMN_CONVERSATION_ID + " = ?" + IN_HISTORY
+                        + " ORDER BY " + ORDER_NEWEST_FIRST + " LIMIT " + limit,
+                historyArgs(historyStart, matchExpression, conversationId))) {
+            while (cursor.moveToNext()) {
+                chatMessages.add(fromCursor(cursor));
+            }
+        }
+        return chatMessages;
+    }
+
+    // Where the complete part of the history starts, as a (timestamp, id) key; null when none is known yet
+    public ChatMessage getHistoryStart(String conversationId) {
+        SQLiteDatabase db = chatDatabase.getReadableDatabase();
+        try (Cursor cursor = db.query(
+                ChatDatabase.TABLE_HISTORY,
+                new String[]{ChatDatabase.COLUMN_TIMESTAMP, ChatDatabase.COLUMN_ID},
+                ChatDatabase.COLUMN_CONVERSATION_ID + " = ?",
+                new String[]{conversationId},
+                null,
+                null,
+                null)) {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            return historyKey(cursor.getLong(0), cursor.getString(1));
+        }
+    }
+
+    // True when the whole conversation is stored, so paging back never needs the server
+    public boolean isHistoryComplete(String conversationId) {
+        ChatMessage historyStart = getHistoryStart(conversationId);
+        return historyStart != null && historyStart.timestamp == 0 && historyStart.id.isEmpty();
+    }
+
+    // Starts the complete history at the given key, or at the beginning when from is null. Unless replace is
+    // set, a start already stored is kept: a listener resuming at the sync watermark continues that history.
+    public void startHistory(String conversationId, ChatMessage from, boolean replace) {
+        ContentValues values = new ContentValues();
+        values.put(ChatDatabase.COLUMN_CONVERSATION_ID, conversationId);
+        values.put(ChatDatabase.COLUMN_TIMESTAMP, from == null ? 0 : from.timestamp);
+        values.put(ChatDatabase.COLUMN_ID, from == null ? "" : from.id);
+        chatDatabase.getWritableDatabase().insertWithOnConflict(ChatDatabase.TABLE_HISTORY, null, values,
+                replace ? SQLiteDatabase.CONFLICT_REPLACE : SQLiteDatabase.CONFLICT_IGNORE);
+    }
+
+    // Stores a server page of the messages right before cursor. When the cursor is within the complete
+    // history, that history now reaches back to the page's oldest message, or to the beginning.
+    public void saveOlderPage(String conversationId, ChatMessage cursor, List<ChatMessage> page, boolean reachedBeginning) {
+        SQLiteDatabase db = chatDatabase.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            insert(db, ChatDatabase.TABLE_MESSAGES, page);
+            ChatMessage historyStart = getHistoryStart(conversationId);
+            if (historyStart != null && compare(cursor, historyStart) >= 0) {
+                ChatMessage oldest = null;
+                for (ChatMessage chatMessage : page) {
+                    if (oldest == null || compare(chatMessage, oldest) < 0) {
+                        oldest = chatMessage;
+                    }
+                }
+                if (reachedBeginning || oldest == null) {
+                    startHistory(conversationId, null, true);
+                } else if (compare(oldest, historyStart) < 0) {
+                    startHistory(conversationId, oldest, true);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Forgets every stored message and history start, e.g. on sign-out, when the sync watermarks go too
+    public void clear() {
+        SQLiteDatabase db = chatDatabase.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(ChatDatabase.TABLE_MESSAGES, null, null);
+            db.delete(ChatDatabase.TABLE_OUTBOX, null, null);
+            db.delete(ChatDatabase.TABLE_HISTORY, null, null);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static ChatMessage historyKey(long timestamp, String id) {
+        ChatMessage key = new ChatMessage();
+        key.timestamp = timestamp;
+        key.id = id;
+        return key;
+    }
+
+    // The selection arguments followed by the three of IN_HISTORY
+    private static String[] historyArgs(ChatMessage historyStart, String... args) {
+        String[] allArgs = new String[args.length + 3];
+        System.arraycopy(args, 0, allArgs, 0, args.length);
+        allArgs[args.length] = String.valueOf(historyStart.timestamp);
+        allArgs[args.length + 1] = String.valueOf(historyStart.timestamp);
+        allArgs[args.length + 2] = historyStart.id;
+        return allArgs;
+    }
+
+    // (timestamp, id) order, as in the tables and the MessageLog
+    private static int compare(ChatMessage first, ChatMessage second) {
+        int byTimestamp = Long.compare(first.timestamp, second.timestamp);
+        return byTimestamp != 0 ? byTimestamp : first.id.compareTo(second.id);
+    }
+
+    // "Hello, wor" in conversation "a_b" becomes "conversation_id:a conversation_id:b message:hello message:wor*":
+    // the words in lower case, so none of them reads as an operator, and the last one as a prefix while it is
+    // still being typed. Null when there is no word to look for.
+    private static String toMatchExpression(String conversationId, String query) {
+        StringBuilder words = new StringBuilder();
+        int lastWordLength = appendWords(words, ChatDatabase.COLUMN_MESSAGE, query);
+        if (words.length() == 0) {
+            return null;
+        }
+        if (lastWordLength >= MIN_PREFIX_LENGTH) {
+            words.append('*');
+        }
+        StringBuilder expression = new StringBuilder();
+        appendWords(expression, ChatDatabase.COLUMN_CONVERSATION_ID, conversationId);
+        return expression.append(' ').append(words).toString();
+    }
+
+    // Appends each word of the text as "column:word", split the way unicode61 splits it. Returns the length
+    // of the word the text ends with, 0 when it ends after a separator.
+    private static int appendWords(StringBuilder expression, String column, String text) {
+        int wordLength = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!Character.isLetterOrDigit(c)) {
+                wordLength = 0;
+                continue;
+            }
+            if (wordLength == 0) {
+                if (expression.length() > 0) {
+                    expression.append(' ');
+                }
+                expression.append(column).append(':');
+            }
+            expression.append(Character.toLowerCase(c));
+            wordLength++;
+        }
+        return wordLength;
+    }
+
+    private List<ChatMessage> queryPage(String selection, String[] selectionArgs, String orderBy, int limit) {
+        List<ChatMessage> chatMessages = new ArrayList<>();
+        SQLiteDatabase db = chatDatabase.getReadableDatabase();
+        try (Cursor cursor = db.query(
+                ChatDatabase.TABLE_MESSAGES,
+                null,
+                selection,
+                selectionArgs,
+                null,
+                null,
+                orderBy,
+                String.valueOf(limit))) {
+            while (cursor.moveToNext()) {
+                chatMessages.add(fromCursor(cursor));
+            }
+        }
+        return chatMessages;
+    }
+
+    public void saveMessages(List<ChatMessage> chatMessages) {
+        SQLiteDatabase db = chatDatabase.getWritableDatabase();
+        // One transaction for the whole batch instead of one fsync per message
+        db.beginTransaction();
+        try {
+            insert(db, ChatDatabase.TABLE_MESSAGES, chatMessages);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Outgoing message written by this device; kept until Firestore accepted it
+    public void addToOutbox(ChatMessage chatMessage) {
+        insert(chatDatabase.getWritableDatabase(), ChatDatabase.TABLE_OUTBOX, Collections.singletonList(chatMessage));
+    }
+
+    // Oldest unsent messages first, so a flush preserves the order they were typed in
+    public List<ChatMessage> getOutbox(int limit) {
+        return queryOutbox(null, null, String.valueOf(limit));
+    }
+
+    public List<ChatMessage> getOutbox(String conversationId) {
+        return queryOutbox(ChatDatabase.COLUMN_CONVERSATION_ID + " = ?", new String[]{conversationId}, null);
+    }
+
+    // Moves sent messages from the outbox into the message store in one transaction
+    public void markSent(List<ChatMessage> chatMessages) {
+        SQLiteDatabase db = chatDatabase.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (ChatMessage chatMessage : chatMessages) {
+                db.delete(ChatDatabase.TABLE_OUTBOX, ChatDatabase.COLUMN_ID + " = ?", new String[]{chatMessage.id});
+            }
+            insert(db, ChatDatabase.TABLE_MESSAGES, chatMessages);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Drops messages that will never be sent
+    public void removeFromOutbox(List<ChatMessage> chatMessages) {
+        SQLiteDatabase db = chatDatabase.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (ChatMessage chatMessage : chatMessages) {
+                db.delete(ChatDatabase.TABLE_OUTBOX, ChatDatabase.COLUMN_ID + " = ?", new String[]{chatMessage.id});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private List<ChatMessage> queryOutbox(String selection, String[] selectionArgs, String limit) {
+        List<ChatMessage> chatMessages = new ArrayList<>();
+        SQLiteDatabase db = chatDatabase.getReadableDatabase();
+        try (Cursor cursor = db.query(
+                ChatDatabase.TABLE_OUTBOX,
+                null,
+                selection,
+                selectionArgs,
+                null,
+                null,
+                ORDER_OLDEST_FIRST,
+                limit)) {
+            while (cursor.moveToNext()) {
+                ChatMessage chatMessage = fromCursor(cursor);
+                chatMessage.pending = true;
+                chatMessages.add(chatMessage);
+            }
+        }
+        return chatMessages;
+    }
+
+    // New messages are inserted once; edits replace the stored text unless a newer edit is stored,
+    // and tombstones remove the stored copy
+    private void insert(SQLiteDatabase db, String table, List<ChatMessage> chatMessages) {
+        ContentValues values = new ContentValues();
+        for (ChatMessage chatMessage : chatMessages) {
+            if (chatMessage.deleted) {
+                db.delete(table, ChatDatabase.COLUMN_ID + " = ?", new String[]{chatMessage.id});
+                continue;
+            }
+            values.clear();
+            values.put(ChatDatabase.COLUMN_ID, chatMessage.id);
+            values.put(ChatDatabase.COLUMN_CONVERSATION_ID, chatMessage.conversationId);
+            values.put(ChatDatabase.COLUMN_SENDER_ID, chatMessage.senderId);
+            values.put(ChatDatabase.COLUMN_RECEIVER_ID, chatMessage.receiverId);
+            values.put(ChatDatabase.COLUMN_MESSAGE, chatMessage.message);
+            values.put(ChatDatabase.COLUMN_TIMESTAMP, chatMessage.timestamp);
+            values.put(ChatDatabase.COLUMN_EDITED_AT, chatMessage.editedAt);
+            if (db.insertWithOnConflict(table, null, values, SQLiteDatabase.CONFLICT_IGNORE) == -1
+                    && chatMessage.editedAt != 0) {
+                values.clear();
+                values.put(ChatDatabase.COLUMN_MESSAGE, chatMessage.message);
+                values.put(ChatDatabase.COLUMN_EDITED_AT, chatMessage.editedAt);
+                db.update(table, values, ChatDatabase.COLUMN_ID + " = ? AND " + ChatDatabase.COLUMN_EDITED_AT + " < ?",
+                        new String[]{chatMessage.id, String.valueOf(chatMessage.editedAt)});
+            }
+        }
+    }
+
+    private ChatMessage fromCursor(Cursor cursor) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.id = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_ID));
+        chatMessage.conversationId = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_CONVERSATION_ID));
+        chatMessage.senderId = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_SENDER_ID));
+        chatMessage.receiverId = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_RECEIVER_ID));
+        chatMessage.message = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_MESSAGE));
+        chatMessage.timestamp = cursor.getLong(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_TIMESTAMP));
+        chatMessage.editedAt = cursor.getLong(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_EDITED_AT));
+        return chatMessage;
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.chat_app.database;
+
+import android.content.Context;
+
+import com.example.chat_app.models.ChatMessage;
+import com.example.chat_app.repository.Callback;
+import com.example.chat_app.repository.MessageRepository;
+import com.example.chat_app.repository.Registration;
+import com.example.chat_app.repository.Repositories;
+import com.example.chat_app.utilities.Constants;
+import com.example.chat_app.utilities.PreferenceManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Realtime listener of one conversation that keeps the local store in step with it.
+// Every delivery is written to the MessageStore, and the conversation's watermark advanced, before it is
+// handed on, so deliveries no screen renders (e.g. while a SubscriptionHub subscription is paused) are not lost.
+// The range starts at the watermark as it is when the listener attaches, so a listener that is attached
+// again later picks up where the previous one stopped. Its first delivery also fixes where the complete
+// stored history starts (MessageStore.startHistory): at the watermark, or at the oldest message of the newest
+// page when nothing was synced yet.
+public class MessageSync {
+
+    private final MessageStore messageStore;
+    private final MessageRepository messageRepository;
+    private final PreferenceManager preferenceManager;
+
+    public MessageSync(Context context) {
+        messageStore = new MessageStore(context);
+        messageRepository = Repositories.messages();
+        preferenceManager = new PreferenceManager(context);
+    }
+
+    // Main thread, like the repository listener it wraps; suitable as a SubscriptionHub source
+    public Registration listen(String conversationId, int limit, Callback<List<ChatMessage>> listener) {
+        String syncedKey = Constants.KEY_SYNCED_UNTIL + conversationId;
+        long since = preferenceManager.getLong(syncedKey);
+        boolean[] isFirstDelivery = {true};
+        return messageRepository.listenMessages(conversationId, since, limit, (delivery, error) -> {
+            if (delivery != null) {
+                // Both are queued on the disk thread, the messages before the start that claims them
+                store(syncedKey, delivery);
+                if (isFirstDelivery[0]) {
+                    isFirstDelivery[0] = false;
+                    startHistory(conversationId, since, limit, delivery);
+                }
+            }
+            listener.onResult(delivery, error);
+        });
+    }
+
+    // The first delivery is the complete initial range as the server has it, never an offline cache's part of
+    // it (see MessageRepository.listenMessages); a gapped range here would be marked as complete history
+    private void startHistory(String conversationId, long since, int limit, List<ChatMessage> delivery) {
+        if (since != 0) {
+            // Everything from the watermark on is delivered; an earlier start, if any, is continued
+            ChatMessage from = new ChatMessage();
+            from.timestamp = since;
+            from.id = "";
+            messageStore.execute(() -> messageStore.startHistory(conversationId, from, false));
+            return;
+        }
+        // Nothing synced yet: a new history starts at the newest page, whatever was stored before it.
+        // Fewer messages than the limit means this is the whole conversation.
+        ChatMessage oldest = delivery.size() < limit ? null : delivery.get(0);
+        for (ChatMessage chatMessage : delivery) {
+            if (oldest != null && (chatMessage.timestamp < oldest.timestamp
+                    || (chatMessage.timestamp == oldest.timestamp && chatMessage.id.compareTo(oldest.id) < 0))) {
+                oldest = chatMessage;
+            }
+        }
+        ChatMessage from = oldest;
+        messageStore.execute(() -> messageStore.startHistory(conversationId, from, true));
+    }
+
+    private void store(String syncedKey, List<ChatMessage> delivery) {
+        // Our own messages still waiting for the server stay in the outbox until they are accepted
+        List<ChatMessage> confirmed = new ArrayList<>(delivery.size());
+        long syncedUntil = 0;
+        for (ChatMessage chatMessage : delivery) {
+            if (!chatMessage.pending) {
+                confirmed.add(chatMessage);
+                syncedUntil = Math.max(syncedUntil, Math.max(chatMessage.timestamp, chatMessage.editedAt));
+            }
+        }
+        if (confirmed.isEmpty()) {
+            return;
+        }
+        long watermark = syncedUntil;
+        // Stored first, then the watermark moves: a crash in between means a re-delivery, never a gap
+        messageStore.execute(() -> {
+            messageStore.saveMessages(confirmed);
+            if (watermark > preferenceManager.getLong(syncedKey)) {
+                preferenceManager.putLong(syncedKey, watermark);
+            }
+        });
+    }
+}
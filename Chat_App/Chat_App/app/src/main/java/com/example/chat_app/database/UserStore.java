@@ -0,0 +1,82 @@
+package com.example.chat_app.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.chat_app.models.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// On-device copy of the user directory. It only ever receives server-confirmed profiles, so the newest
+// updatedAt it holds is a watermark: everything changed before it is already here.
+// All methods touch the disk, so call them from a background thread (see execute()).
+public class UserStore {
+
+    private static final ExecutorService diskExecutor = Executors.newSingleThreadExecutor();
+
+    private final ChatDatabase chatDatabase;
+
+    public UserStore(Context context) {
+        chatDatabase = ChatDatabase.getInstance(context);
+    }
+
+    public void execute(Runnable runnable) {
+        diskExecutor.execute(runnable);
+    }
+
+    public List<User> getUsers() {
+        List<User> users = new ArrayList<>();
+        SQLiteDatabase db = chatDatabase.getReadableDatabase();
+        try (Cursor cursor = db.query(ChatDatabase.TABLE_USERS, null, null, null, null, null, null)) {
+            while (cursor.moveToNext()) {
+                users.add(fromCursor(cursor));
+            }
+        }
+        return users;
+    }
+
+    // 0 when nothing is cached yet, which asks the repository for the whole directory
+    public long getSyncedUntil() {
+        SQLiteDatabase db = chatDatabase.getReadableDatabase();
+        try (Cursor cursor = db.rawQuery("SELECT MAX(" + ChatDatabase.COLUMN_UPDATED_AT + ") FROM "
+                + ChatDatabase.TABLE_USERS, null)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+
+    // Newer profiles replace the cached ones; one transaction per delivery
+    public void saveUsers(List<User> users) {
+        SQLiteDatabase db = chatDatabase.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        db.beginTransaction();
+        try {
+            for (User user : users) {
+                values.clear();
+                values.put(ChatDatabase.COLUMN_ID, user.id);
+                values.put(ChatDatabase.COLUMN_NAME, user.name);
+                values.put(ChatDatabase.COLUMN_EMAIL, user.email);
+                values.put(ChatDatabase.COLUMN_IMAGE_HASH, user.imageHash);
+                values.put(ChatDatabase.COLUMN_UPDATED_AT, user.updatedAt);
+                db.insertWithOnConflict(ChatDatabase.TABLE_USERS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private User fromCursor(Cursor cursor) {
+        User user = new User();
+        user.id = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_ID));
+        user.name = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_NAME));
+        user.email = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_EMAIL));
+        user.imageHash = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_IMAGE_HASH));
+        user.updatedAt = cursor.getLong(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_UPDATED_AT));
+        return user;
+    }
+}
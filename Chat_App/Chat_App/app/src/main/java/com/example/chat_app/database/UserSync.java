@@ -0,0 +1,55 @@
+package com.example.chat_app.database;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.chat_app.models.User;
+import com.example.chat_app.repository.Callback;
+import com.example.chat_app.repository.Registration;
+import com.example.chat_app.repository.Repositories;
+import com.example.chat_app.repository.UserRepository;
+
+import java.util.List;
+
+// Realtime listener of the user directory that keeps the UserStore in step with it, like MessageSync does for
+// a conversation. Every delivery is stored before it is handed on, and each time the listener attaches it
+// starts at the store's watermark as it is then, so a listener attached again after a detach continues
+// where the stored directory ends.
+public class UserSync {
+
+    private final UserStore userStore;
+    private final UserRepository userRepository;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public UserSync(Context context) {
+        userStore = new UserStore(context);
+        userRepository = Repositories.users();
+    }
+
+    // Main thread, like the repository listener it wraps; suitable as a SubscriptionHub source
+    public Registration listen(Callback<List<User>> listener) {
+        // The watermark is read on the disk thread, after every delivery already queued there is stored
+        Registration[] registration = new Registration[1];
+        boolean[] removed = new boolean[1];
+        userStore.execute(() -> {
+            long syncedUntil = userStore.getSyncedUntil();
+            mainHandler.post(() -> {
+                if (!removed[0]) {
+                    registration[0] = userRepository.listenUsers(syncedUntil, (delivery, error) -> {
+                        if (delivery != null && !delivery.isEmpty()) {
+                            userStore.execute(() -> userStore.saveUsers(delivery));
+                        }
+                        listener.onResult(delivery, error);
+                    });
+                }
+            });
+        });
+        return () -> {
+            removed[0] = true;
+            if (registration[0] != null) {
+                registration[0].remove();
+            }
+        };
+    }
+}
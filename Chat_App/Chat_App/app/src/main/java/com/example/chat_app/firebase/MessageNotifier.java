@@ -0,0 +1,134 @@
+package com.example.chat_app.firebase;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+
+import com.example.chat_app.R;
+import com.example.chat_app.activities.ChatActivity;
+import com.example.chat_app.models.ChatMessage;
+import com.example.chat_app.models.User;
+import com.example.chat_app.utilities.UserRegistry;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+// Turns pushed messages into at most one notification per conversation.
+// Messages are collected for a short window and posted together, so a burst of 50 messages
+// updates the notification once instead of 50 times. Everything runs on the main thread.
+public class MessageNotifier {
+
+    private static final String CHANNEL_ID = "messages";
+    private static final long COALESCE_DELAY_MILLIS = 750;
+    private static final int MAX_LINES = 5; // InboxStyle shows at most this many lines anyway
+
+    private static MessageNotifier instance;
+
+    private final Context context;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, PendingConversation> conversations = new HashMap<>();
+    private String activeConversationId;
+
+    // Messages of one conversation that are not read yet
+    private static class PendingConversation {
+        User sender;
+        int messageCount;
+        boolean scheduled; // A post is already waiting for the end of the window
+        final Deque<String> lines = new ArrayDeque<>();
+    }
+
+    public static synchronized MessageNotifier getInstance(Context context) {
+        if (instance == null) {
+            instance = new MessageNotifier(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private MessageNotifier(Context context) {
+        this.context = context;
+        NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                context.getString(R.string.notification_channel_messages), NotificationManager.IMPORTANCE_HIGH);
+        context.getSystemService(NotificationManager.class).createNotificationChannel(channel);
+    }
+
+    // Can be called from any thread, e.g. the FCM worker thread
+    public void notify(ChatMessage chatMessage, User sender) {
+        mainHandler.post(() -> {
+            if (chatMessage.conversationId.equals(activeConversationId)) {
+                return; // The chat is on screen, the message is shown there
+            }
+            PendingConversation conversation = conversations.get(chatMessage.conversationId);
+            if (conversation == null) {
+                conversation = new PendingConversation();
+                conversations.put(chatMessage.conversationId, conversation);
+            }
+            conversation.sender = sender;
+            conversation.messageCount++;
+            conversation.lines.addLast(chatMessage.message);
+            if (conversation.lines.size() > MAX_LINES) {
+                conversation.lines.removeFirst();
+            }
+            // One post per conversation per window, however many messages arrived in it
+            if (!conversation.scheduled) {
+                conversation.scheduled = true;
+                String conversationId = chatMessage.conversationId;
+                mainHandler.postDelayed(() -> post(conversationId), COALESCE_DELAY_MILLIS);
+            }
+        });
+    }
+
+    // Called by ChatActivity: no notifications while a conversation is open, and opening it clears them
+    public void setActiveConversation(String conversationId) {
+        mainHandler.post(() -> {
+            activeConversationId = conversationId;
+            if (conversationId != null && conversations.remove(conversationId) != null) {
+                NotificationManagerCompat.from(context).cancel(conversationId, 0);
+            }
+        });
+    }
+
+    private void post(String conversationId) {
+        PendingConversation conversation = conversations.get(conversationId);
+        if (conversation == null) {
+            return; // Opened in the meantime
+        }
+        conversation.scheduled = false;
+
+        NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle();
+        for (String line : conversation.lines) {
+            style.addLine(line);
+        }
+        String summary = context.getResources().getQuantityString(
+                R.plurals.new_messages, conversation.messageCount, conversation.messageCount);
+        style.setSummaryText(summary);
+
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_send)
+                .setContentTitle(conversation.sender.name)
+                .setContentText(conversation.lines.peekLast())
+                .setStyle(style)
+                .setNumber(conversation.messageCount)
+                .setAutoCancel(true)
+                .setOnlyAlertOnce(true)
+                .setContentIntent(chatIntent(conversationId, conversation.sender));
+        NotificationManagerCompat.from(context).notify(conversationId, 0, builder.build());
+    }
+
+    // Opens the chat the same way UsersActivity does; the messages are already in the local store
+    private PendingIntent chatIntent(String conversationId, User sender) {
+        Intent intent = new Intent(context, ChatActivity.class);
+        UserRegistry.putExtras(intent, sender);
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
+        return PendingIntent.getActivity(context, conversationId.hashCode(), intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    }
+}
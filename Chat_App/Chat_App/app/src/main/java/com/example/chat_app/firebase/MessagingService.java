@@ -3,18 +3,77 @@ package com.example.chat_app.firebase;
 
 import androidx.annotation.NonNull;
 
+import com.example.chat_app.database.MessageStore;
+import com.example.chat_app.models.ChatMessage;
+import com.example.chat_app.models.User;
+import com.example.chat_app.utilities.Constants;
+import com.example.chat_app.utilities.PreferenceManager;
+import com.example.chat_app.utilities.UserRegistry;
 import com.google.firebase.messaging.FirebaseMessagingService;
 import com.google.firebase.messaging.RemoteMessage;
 
+import java.util.Collections;
+import java.util.Map;
+
+// Data pushes carry the whole message, so it is written to the local store as it arrives
+// and the chat renders from disk when it is opened, without waiting for Firestore.
+// Payload keys: messageId, conversationId, senderId, receiverId, message, timestamp (epoch millis),
+// senderName and senderImageHash. The sender (a Cloud Function on chat writes) is not part of this app.
 public class MessagingService extends FirebaseMessagingService {
 
     @Override
     public void onNewToken(@NonNull String token) {
         super.onNewToken(token);
+        // The only place a rotated token is learned; the registrar writes it once it settles
+        TokenRegistrar.getInstance(getApplicationContext()).register(token);
     }
 
     @Override
     public void onMessageReceived(@NonNull RemoteMessage remoteMessage) {
+        Map<String, String> data = remoteMessage.getData();
+        ChatMessage chatMessage = toChatMessage(data);
+        if (chatMessage == null) {
+            return;
+        }
+
+        // Pushes addressed to an account that signed out on this device are dropped
+        PreferenceManager preferenceManager = new PreferenceManager(getApplicationContext());
+        if (!chatMessage.receiverId.equals(preferenceManager.getString(Constants.KEY_USER_ID))) {
+            return;
+        }
+
+        // Already on a background thread, and FCM keeps the process alive until we return
+        new MessageStore(getApplicationContext()).saveMessages(Collections.singletonList(chatMessage));
+
+        User sender = new User();
+        sender.id = chatMessage.senderId;
+        sender.name = data.get(Constants.KEY_NAME_SENDER);
+        sender.imageHash = data.get(Constants.KEY_IMAGE_HASH_SENDER);
+        if (UserRegistry.getInstance().get(sender.id) == null) {
+            UserRegistry.getInstance().put(sender);
+        }
+
+        MessageNotifier.getInstance(getApplicationContext()).notify(chatMessage, sender);
+    }
 
+    private ChatMessage toChatMessage(Map<String, String> data) {
+        String id = data.get(Constants.KEY_MESSAGE_ID);
+        String timestamp = data.get(Constants.KEY_TIMESTAMP);
+        if (id == null || timestamp == null || data.get(Constants.KEY_CONVERSATION_ID) == null
+                || data.get(Constants.KEY_RECEIVER_ID) == null) {
+            return null; // Not a chat push
+        }
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.id = id;
+        chatMessage.conversationId = data.get(Constants.KEY_CONVERSATION_ID);
+        chatMessage.senderId = data.get(Constants.KEY_SENDER_ID);
+        chatMessage.receiverId = data.get(Constants.KEY_RECEIVER_ID);
+        chatMessage.message = data.get(Constants.KEY_MESSAGE);
+        try {
+            chatMessage.timestamp = Long.parseLong(timestamp);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return chatMessage;
     }
 }
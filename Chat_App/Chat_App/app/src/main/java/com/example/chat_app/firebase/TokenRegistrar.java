@@ -0,0 +1,114 @@
+package com.example.chat_app.firebase;
+
+import android.content.Context;
+
+import com.example.chat_app.utilities.Constants;
+import com.example.chat_app.utilities.PreferenceManager;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.messaging.FirebaseMessaging;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Keeps the fcmToken field of the signed-in user's document up to date with as few writes as possible.
+// The last token written (and the user it was written for) is remembered locally, so a cold start
+// with an unchanged token costs no network at all. Rotations arrive through onNewToken, are debounced
+// (FCM can report the same token more than once in a row) and retried with backoff until they stick.
+public class TokenRegistrar {
+
+    private static final long DEBOUNCE_MILLIS = 2000;
+    private static final long MIN_RETRY_DELAY_MILLIS = 5000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 10 * 60 * 1000;
+
+    private static TokenRegistrar instance;
+
+    private final PreferenceManager preferenceManager;
+    // Every field below is only touched on this thread
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private ScheduledFuture<?> scheduledWrite;
+    private String pendingToken;
+    private long retryDelayMillis = MIN_RETRY_DELAY_MILLIS;
+
+    public static synchronized TokenRegistrar getInstance(Context context) {
+        if (instance == null) {
+            instance = new TokenRegistrar(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private TokenRegistrar(Context context) {
+        preferenceManager = new PreferenceManager(context);
+    }
+
+    // After sign-in (or on a device that never registered): asks FCM for the current token,
+    // which is answered locally, and writes it only if this user does not have it yet
+    public void ensureRegistered() {
+        executor.execute(() -> {
+            if (isRegistered(preferenceManager.getString(Constants.KEY_REGISTERED_FCM_TOKEN))) {
+                return;
+            }
+            FirebaseMessaging.getInstance().getToken().addOnSuccessListener(executor, this::register);
+        });
+    }
+
+    // Called from onNewToken and ensureRegistered, on any thread
+    public void register(String token) {
+        executor.execute(() -> {
+            pendingToken = token;
+            if (isRegistered(token)) {
+                cancelScheduledWrite();
+                return;
+            }
+            // Restart the debounce window, so a burst of rotations ends in one write of the last token
+            cancelScheduledWrite();
+            retryDelayMillis = MIN_RETRY_DELAY_MILLIS;
+            scheduleWrite(DEBOUNCE_MILLIS);
+        });
+    }
+
+    private boolean isRegistered(String token) {
+        String userId = preferenceManager.getString(Constants.KEY_USER_ID);
+        return token != null
+                && token.equals(preferenceManager.getString(Constants.KEY_REGISTERED_FCM_TOKEN))
+                && userId != null
+                && userId.equals(preferenceManager.getString(Constants.KEY_REGISTERED_FCM_USER_ID));
+    }
+
+    private void scheduleWrite(long delayMillis) {
+        scheduledWrite = executor.schedule(this::write, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelScheduledWrite() {
+        if (scheduledWrite != null) {
+            scheduledWrite.cancel(false);
+            scheduledWrite = null;
+        }
+    }
+
+    private void write() {
+        scheduledWrite = null;
+        String token = pendingToken;
+        String userId = preferenceManager.getString(Constants.KEY_USER_ID);
+        if (token == null || userId == null) {
+            return; // Signed out: ensureRegistered() runs again after the next sign-in
+        }
+        FirebaseFirestore.getInstance().collection(Constants.KEY_COLLECTION_USERS).document(userId)
+                .update(Constants.KEY_FCM_TOKEN, token)
+                .addOnCompleteListener(executor, task -> {
+                    if (!token.equals(pendingToken) || scheduledWrite != null) {
+                        return; // A newer token is already on its way
+                    }
+                    if (task.isSuccessful()) {
+                        preferenceManager.edit(editor -> editor
+                                .putString(Constants.KEY_REGISTERED_FCM_TOKEN, token)
+                                .putString(Constants.KEY_REGISTERED_FCM_USER_ID, userId));
+                        retryDelayMillis = MIN_RETRY_DELAY_MILLIS;
+                    } else {
+                        scheduleWrite(retryDelayMillis);
+                        retryDelayMillis = Math.min(retryDelayMillis * 2, MAX_RETRY_DELAY_MILLIS);
+                    }
+                });
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.chat_app.listeners;
+
+import com.example.chat_app.models.Conversation;
+
+public interface ConversationListener {
+    void onConversationClicked(Conversation conversation);
+}
@@ -0,0 +1,7 @@
+package com.example.chat_app.listeners;
+
+import com.example.chat_app.models.ChatMessage;
+
+public interface MessageListener {
+    void onMessageLongClicked(ChatMessage chatMessage);
+}
@@ -1,6 +0,0 @@
-package com.example.chat_app.models;
-
-import java.io.Serializable;
-public class User implements Serializable{
-    public String name, image, email, token,id;
-}
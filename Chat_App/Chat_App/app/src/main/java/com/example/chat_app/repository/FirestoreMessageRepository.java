@@ -0,0 +1,311 @@
+package com.example.chat_app.repository;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.chat_app.models.ChatMessage;
+import com.example.chat_app.models.Conversation;
+import com.example.chat_app.models.User;
+import com.example.chat_app.utilities.Constants;
+import com.example.chat_app.utilities.ConversationIndex;
+import com.example.chat_app.utilities.UserRegistry;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.MetadataChanges;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Messages live in the top-level chat collection, one document per message keyed by the id it got on
+// the sending device; each user's recent conversations live in users/{id}/conversations (ConversationIndex)
+public class FirestoreMessageRepository implements MessageRepository {
+
+    private static final int MAX_BATCH_SIZE = 500; // Firestore's cap on writes per batch
+
+    private final FirebaseFirestore database;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // One thread, so the snapshots of a listener are decoded and handed to the main thread in order
+    private final ExecutorService decodeExecutor = Executors.newSingleThreadExecutor();
+
+    public FirestoreMessageRepository(FirebaseFirestore database) {
+        this.database = database;
+    }
+
+    @Override
+    public String newMessageId() {
+        return database.collection(Constants.KEY_COLLECTION_CHAT).document().getId();
+    }
+
+    @Override
+    public Registration listenMessages(String conversationId, long since, int limit, Callback<List<ChatMessage>> listener) {
+        // One ordered query per conversation (composite index: conversationId ASC, timestamp ASC)
+        Query query = database.collection(Constants.KEY_COLLECTION_CHAT)
+                .whereEqualTo(Constants.KEY_CONVERSATION_ID, conversationId)
+                .orderBy(Constants.KEY_TIMESTAMP, Query.Direction.ASCENDING);
+        if (since == 0) {
+            query = query.limitToLast(limit);
+        } else {
+            query = query.whereGreaterThanOrEqualTo(Constants.KEY_TIMESTAMP, new Date(since));
+        }
+        // Edits and deletes of messages before that range (composite index: conversationId ASC, editedAt ASC).
+        // Without a watermark only edits from now on are needed: older pages are read with their current state.
+        Query editsQuery = database.collection(Constants.KEY_COLLECTION_CHAT)
+                .whereEqualTo(Constants.KEY_CONVERSATION_ID, conversationId)
+                .whereGreaterThanOrEqualTo(Constants.KEY_EDITED_AT, new Date(since == 0 ? System.currentTimeMillis() : since));
+
+        // Only server-confirmed snapshots are delivered, as in FirestoreUserRepository: callers keep a watermark
+        // and mark the first delivery as complete stored history (MessageSync), and a snapshot from Firestore's
+        // offline cache may miss any part of the range. Metadata changes are included so the switch from cache
+        // to server raises a snapshot. The edits listener is attached once the range's first server snapshot
+        // was delivered, so the first delivery is always the complete initial range.
+        // Decoder thread state: whether a server snapshot of the query was delivered yet.
+        boolean[] synced = new boolean[1];
+        boolean[] editsSynced = new boolean[1];
+        // Main thread state
+        ListenerRegistration[] edits = new ListenerRegistration[1];
+        boolean[] removed = new boolean[1];
+
+        // Snapshots are decoded on the background executor; the main thread only gets the finished records
+        ListenerRegistration registration = query.addSnapshotListener(decodeExecutor, MetadataChanges.INCLUDE, (value, error) -> {
+            boolean wasSynced = synced[0];
+            if (!deliverChanges(value, error, synced, listener) || wasSynced) {
+                return;
+            }
+            mainHandler.post(() -> {
+                if (!removed[0] && edits[0] == null) {
+                    edits[0] = editsQuery.addSnapshotListener(decodeExecutor, MetadataChanges.INCLUDE,
+                            (editsValue, editsError) -> deliverChanges(editsValue, editsError, editsSynced, listener));
+                }
+            });
+        });
+        return () -> {
+            removed[0] = true;
+            registration.remove();
+            if (edits[0] != null) {
+                edits[0].remove();
+            }
+        };
+    }
+
+    // Returns whether a server snapshot was delivered
+    private boolean deliverChanges(QuerySnapshot value, Exception error, boolean[] synced, Callback<List<ChatMessage>> listener) {
+        if (error != null || value == null) {
+            mainHandler.post(() -> listener.onResult(null, error));
+            return false;
+        }
+        if (value.getMetadata().isFromCache()) {
+            return false;
+        }
+        List<ChatMessage> changed = new ArrayList<>();
+        if (!synced[0]) {
+            // Earlier cache snapshots were skipped, so the first server snapshot is delivered whole
+            synced[0] = true;
+            for (DocumentSnapshot document : value.getDocuments()) {
+                changed.add(toDeliveredMessage(document));
+            }
+        } else {
+            for (DocumentChange documentChange : value.getDocumentChanges()) {
+                // REMOVED only means the document left the query (e.g. pushed out of the limitToLast window);
+                // a delete is a tombstone and arrives as MODIFIED, like an edit
+                if (documentChange.getType() != DocumentChange.Type.REMOVED) {
+                    changed.add(toDeliveredMessage(documentChange.getDocument()));
+                }
+            }
+        }
+        sort(changed);
+        mainHandler.post(() -> listener.onResult(changed, null));
+        return true;
+    }
+
+    private ChatMessage toDeliveredMessage(DocumentSnapshot document) {
+        ChatMessage chatMessage = toChatMessage(document);
+        chatMessage.pending = document.getMetadata().hasPendingWrites();
+        return chatMessage;
+    }
+
+    @Override
+    public void getMessagesBefore(String conversationId, ChatMessage before, int limit, Callback<List<ChatMessage>> callback) {
+        // Cursor on (timestamp, document id), the same order used by the local store
+        database.collection(Constants.KEY_COLLECTION_CHAT)
+                .whereEqualTo(Constants.KEY_CONVERSATION_ID, conversationId)
+                .orderBy(Constants.KEY_TIMESTAMP, Query.Direction.DESCENDING)
+                .orderBy(FieldPath.documentId(), Query.Direction.DESCENDING)
+                .startAfter(new Date(before.timestamp), before.id)
+                .limit(limit)
+                .get()
+                .addOnCompleteListener(decodeExecutor, task -> {
+                    if (!task.isSuccessful() || task.getResult() == null) {
+                        mainHandler.post(() -> callback.onResult(null, task.getException()));
+                        return;
+                    }
+                    List<ChatMessage> page = new ArrayList<>();
+                    for (DocumentSnapshot document : task.getResult().getDocuments()) {
+                        page.add(toChatMessage(document));
+                    }
+                    mainHandler.post(() -> callback.onResult(page, null));
+                });
+    }
+
+    @Override
+    public void sendMessages(List<ChatMessage> chatMessages, User sender, Callback<Void> callback) {
+        WriteBatch batch = database.batch();
+        // Only the last message of each conversation goes into the index, together with how many were sent
+        Map<String, ChatMessage> lastMessages = new LinkedHashMap<>();
+        Map<String, Integer> messageCounts = new HashMap<>();
+        for (ChatMessage chatMessage : chatMessages) {
+            lastMessages.put(chatMessage.conversationId, chatMessage);
+            Integer count = messageCounts.get(chatMessage.conversationId);
+            messageCounts.put(chatMessage.conversationId, count == null ? 1 : count + 1);
+
+            HashMap<String, Object> message = new HashMap<>();
+            message.put(Constants.KEY_SENDER_ID, chatMessage.senderId);
+            message.put(Constants.KEY_RECEIVER_ID, chatMessage.receiverId);
+            message.put(Constants.KEY_CONVERSATION_ID, chatMessage.conversationId);
+            message.put(Constants.KEY_MESSAGE, chatMessage.message);
+            message.put(Constants.KEY_TIMESTAMP, new Date(chatMessage.timestamp));
+            // set() on a fixed id: sending the same message twice leaves one document
+            batch.set(database.collection(Constants.KEY_COLLECTION_CHAT).document(chatMessage.id), message);
+        }
+        for (ChatMessage lastMessage : lastMessages.values()) {
+            ConversationIndex.put(batch, database, lastMessage, messageCounts.get(lastMessage.conversationId),
+                    sender, UserRegistry.getInstance().get(lastMessage.receiverId));
+        }
+        batch.commit().addOnCompleteListener(task -> callback.onResult(null, task.getException()));
+    }
+
+    @Override
+    public void editMessage(ChatMessage chatMessage, Callback<Void> callback) {
+        database.collection(Constants.KEY_COLLECTION_CHAT).document(chatMessage.id)
+                .update(Constants.KEY_MESSAGE, chatMessage.message,
+                        Constants.KEY_EDITED_AT, new Date(chatMessage.editedAt))
+                .addOnCompleteListener(task -> callback.onResult(null, task.getException()));
+        // The recent-conversations list shows the new text when this was the last message
+        ConversationIndex.replaceLastMessage(database, chatMessage);
+    }
+
+    @Override
+    public void deleteMessage(ChatMessage chatMessage, Callback<Void> callback) {
+        // A tombstone rather than a document delete: it keeps its place in the (timestamp, id) order and
+        // reaches listeners whose query no longer covers the message through editedAt
+        database.collection(Constants.KEY_COLLECTION_CHAT).document(chatMessage.id)
+                .update(Constants.KEY_DELETED, true,
+                        Constants.KEY_MESSAGE, FieldValue.delete(),
+                        Constants.KEY_EDITED_AT, new Date(chatMessage.editedAt))
+                .addOnCompleteListener(task -> callback.onResult(null, task.getException()));
+        ConversationIndex.replaceLastMessage(database, chatMessage);
+    }
+
+    @Override
+    public Registration listenConversations(String userId, int limit, Callback<List<Conversation>> listener) {
+        ListenerRegistration registration = ConversationIndex.collection(database, userId)
+                .orderBy(Constants.KEY_TIMESTAMP, Query.Direction.DESCENDING)
+                .limit(limit)
+                .addSnapshotListener((value, error) -> {
+                    if (error != null || value == null) {
+                        listener.onResult(null, error);
+                        return;
+                    }
+                    List<Conversation> conversations = new ArrayList<>();
+                    for (DocumentSnapshot document : value.getDocuments()) {
+                        conversations.add(toConversation(document));
+                    }
+                    listener.onResult(conversations, null);
+                });
+        return registration::remove;
+    }
+
+    @Override
+    public void markRead(String userId, String peerId) {
+        ConversationIndex.markRead(database, userId, peerId);
+    }
+
+    @Override
+    public void backfillConversation(String conversationId, String userId, String peerId, Callback<Void> callback) {
+        // Messages written before conversationId existed are only found by their two participants
+        Task<QuerySnapshot> sent = database.collection(Constants.KEY_COLLECTION_CHAT)
+                .whereEqualTo(Constants.KEY_SENDER_ID, userId)
+                .whereEqualTo(Constants.KEY_RECEIVER_ID, peerId)
+                .get();
+        Task<QuerySnapshot> received = database.collection(Constants.KEY_COLLECTION_CHAT)
+                .whereEqualTo(Constants.KEY_SENDER_ID, peerId)
+                .whereEqualTo(Constants.KEY_RECEIVER_ID, userId)
+                .get();
+        Tasks.whenAllSuccess(sent, received).addOnCompleteListener(queries -> {
+            if (!queries.isSuccessful()) {
+                callback.onResult(null, queries.getException());
+                return;
+            }
+            List<Task<Void>> commits = new ArrayList<>();
+            WriteBatch batch = database.batch();
+            int batchSize = 0;
+            for (Object result : queries.getResult()) {
+                for (DocumentSnapshot document : ((QuerySnapshot) result).getDocuments()) {
+                    if (document.contains(Constants.KEY_CONVERSATION_ID)) {
+                        continue;
+                    }
+                    batch.update(document.getReference(), Constants.KEY_CONVERSATION_ID, conversationId);
+                    if (++batchSize == MAX_BATCH_SIZE) {
+                        commits.add(batch.commit());
+                        batch = database.batch();
+                        batchSize = 0;
+                    }
+                }
+            }
+            if (batchSize > 0) {
+                commits.add(batch.commit());
+            }
+            Tasks.whenAll(commits).addOnCompleteListener(task -> callback.onResult(null, task.getException()));
+        });
+    }
+
+    // The order MessageLog keeps, so a delivery lands in the window as one contiguous range
+    private static void sort(List<ChatMessage> chatMessages) {
+        Collections.sort(chatMessages, (a, b) -> {
+            int byTime = Long.compare(a.timestamp, b.timestamp);
+            return byTime != 0 ? byTime : a.id.compareTo(b.id);
+        });
+    }
+
+    private ChatMessage toChatMessage(DocumentSnapshot document) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.id = document.getId();
+        chatMessage.conversationId = document.getString(Constants.KEY_CONVERSATION_ID);
+        chatMessage.senderId = document.getString(Constants.KEY_SENDER_ID);
+        chatMessage.receiverId = document.getString(Constants.KEY_RECEIVER_ID);
+        chatMessage.message = document.getString(Constants.KEY_MESSAGE);
+        chatMessage.timestamp = document.getDate(Constants.KEY_TIMESTAMP).getTime();
+        Date editedAt = document.getDate(Constants.KEY_EDITED_AT);
+        chatMessage.editedAt = editedAt == null ? 0 : editedAt.getTime();
+        chatMessage.deleted = Boolean.TRUE.equals(document.getBoolean(Constants.KEY_DELETED));
+        return chatMessage;
+    }
+
+    private Conversation toConversation(DocumentSnapshot document) {
+        Conversation conversation = new Conversation();
+        conversation.peerId = document.getId();
+        conversation.peerName = document.getString(Constants.KEY_PEER_NAME);
+        conversation.peerImageHash = document.getString(Constants.KEY_PEER_IMAGE_HASH);
+        conversation.lastMessage = document.getString(Constants.KEY_LAST_MESSAGE);
+        Date timestamp = document.getDate(Constants.KEY_TIMESTAMP);
+        conversation.timestamp = timestamp == null ? 0 : timestamp.getTime();
+        Long unreadCount = document.getLong(Constants.KEY_UNREAD_COUNT);
+        conversation.unreadCount = unreadCount == null ? 0 : unreadCount;
+        return conversation;
+    }
+}
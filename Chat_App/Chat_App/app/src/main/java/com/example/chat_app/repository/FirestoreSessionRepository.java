@@ -0,0 +1,197 @@
+package com.example.chat_app.repository;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.chat_app.models.User;
+import com.example.chat_app.utilities.AvatarBlobs;
+import com.example.chat_app.utilities.Constants;
+import com.example.chat_app.utilities.LegacyImages;
+import com.example.chat_app.utilities.LoginIndex;
+import com.example.chat_app.utilities.PasswordHasher;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Accounts through the login index (see LoginIndex): signing in is a direct get of the login document,
+// a local hash check and a get of the user document
+public class FirestoreSessionRepository implements SessionRepository {
+
+    private final FirebaseFirestore database;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Password hashing is deliberately slow, so it never runs on the main thread
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    public FirestoreSessionRepository(FirebaseFirestore database) {
+        this.database = database;
+    }
+
+    @Override
+    public void signIn(String email, String password, Callback<User> callback) {
+        LoginIndex.reference(database, email).get()
+                .addOnSuccessListener(executor, login -> {
+                    if (!login.exists()) {
+                        mainHandler.post(() -> signInLegacy(email, password, callback));
+                        return;
+                    }
+                    String userId = login.getString(Constants.KEY_USER_ID);
+                    String salt = login.getString(Constants.KEY_PASSWORD_SALT);
+                    String hash = login.getString(Constants.KEY_PASSWORD_HASH);
+                    Long iterations = login.getLong(Constants.KEY_PASSWORD_ITERATIONS);
+                    if (userId == null || salt == null || hash == null || iterations == null
+                            || !PasswordHasher.verify(password, salt, iterations.intValue(), hash)) {
+                        mainHandler.post(() -> callback.onResult(null, null));
+                        return;
+                    }
+                    database.collection(Constants.KEY_COLLECTION_USERS).document(userId).get()
+                            .addOnSuccessListener(executor, documentSnapshot -> {
+                                // toUser may migrate a legacy avatar, which decodes the image: not on the main thread
+                                User user = toUser(documentSnapshot);
+                                mainHandler.post(() -> callback.onResult(user, null));
+                            })
+                            .addOnFailureListener(exception -> callback.onResult(null, exception));
+                })
+                .addOnFailureListener(exception -> callback.onResult(null, exception));
+    }
+
+    // Accounts created before the login index: find the user by email once, check the password,
+    // then write the login document and drop the plaintext password so the next sign-in takes the direct path
+    private void signInLegacy(String email, String password, Callback<User> callback) {
+        database.collection(Constants.KEY_COLLECTION_USERS)
+                .whereEqualTo(Constants.KEY_EMAIL, email)
+                .get()
+                .addOnSuccessListener(executor, result -> {
+                    for (DocumentSnapshot documentSnapshot : result.getDocuments()) {
+                        String storedPassword = documentSnapshot.getString(Constants.KEY_PASSWORD);
+                        if (storedPassword == null || !MessageDigest.isEqual(
+                                storedPassword.getBytes(StandardCharsets.UTF_8), password.getBytes(StandardCharsets.UTF_8))) {
+                            continue;
+                        }
+                        WriteBatch batch = database.batch();
+                        batch.set(LoginIndex.reference(database, email), LoginIndex.entry(documentSnapshot.getId(), password));
+                        batch.update(documentSnapshot.getReference(), Constants.KEY_PASSWORD, FieldValue.delete());
+                        batch.commit();
+                        User user = toUser(documentSnapshot);
+                        mainHandler.post(() -> callback.onResult(user, null));
+                        return;
+                    }
+                    mainHandler.post(() -> callback.onResult(null, null));
+                })
+                .addOnFailureListener(exception -> callback.onResult(null, exception));
+    }
+
+    @Override
+    public void signUp(User user, String password, byte[] avatar, Callback<User> callback) {
+        executor.execute(() -> {
+            DocumentReference loginReference = LoginIndex.reference(database, user.email);
+            DocumentReference documentReference = database.collection(Constants.KEY_COLLECTION_USERS).document();
+            // Hashed once up front: the transaction below may run more than once
+            HashMap<String, Object> loginEntry = LoginIndex.entry(documentReference.getId(), password);
+
+            // The avatar is stored once as a blob named by its hash, the user document only references it
+            String imageHash = AvatarBlobs.hash(avatar);
+
+            // The password only exists as a hash in the login document
+            HashMap<String, Object> document = new HashMap<>();
+            document.put(Constants.KEY_NAME, user.name);
+            document.put(Constants.KEY_EMAIL, user.email);
+            document.put(Constants.KEY_IMAGE_HASH, imageHash);
+            document.put(Constants.KEY_UPDATED_AT, FieldValue.serverTimestamp());
+
+            // The login document is keyed by the email. Checking it and writing the avatar blob, the user and
+            // the login in one transaction means two sign-ups with the same email cannot both succeed:
+            // the later commit is retried by Firestore and then finds the login taken.
+            database.runTransaction(transaction -> {
+                if (transaction.get(loginReference).exists()) {
+                    throw new FirebaseFirestoreException("Email already registered",
+                            FirebaseFirestoreException.Code.ALREADY_EXISTS);
+                }
+                AvatarBlobs.put(transaction, database, imageHash, avatar);
+                transaction.set(documentReference, document);
+                transaction.set(loginReference, loginEntry);
+                return null;
+            })
+                    .addOnSuccessListener(unused -> {
+                        User created = new User();
+                        created.id = documentReference.getId();
+                        created.name = user.name;
+                        created.email = user.email;
+                        created.imageHash = imageHash;
+                        callback.onResult(created, null);
+                    })
+                    .addOnFailureListener(exception -> callback.onResult(null, isEmailTaken(exception)
+                            ? new EmailTakenException() : exception));
+        });
+    }
+
+    private static boolean isEmailTaken(Exception exception) {
+        return exception instanceof FirebaseFirestoreException
+                && ((FirebaseFirestoreException) exception).getCode() == FirebaseFirestoreException.Code.ALREADY_EXISTS;
+    }
+
+    @Override
+    public void signOut(String userId, Callback<Void> callback) {
+        // Remove the FCM token from the user document so no more pushes reach this device
+        HashMap<String, Object> updates = new HashMap<>();
+        updates.put(Constants.KEY_FCM_TOKEN, FieldValue.delete());
+        database.collection(Constants.KEY_COLLECTION_USERS).document(userId).update(updates)
+                .addOnCompleteListener(task -> callback.onResult(null, task.getException()));
+    }
+
+    @Override
+    public void migrateLegacyImage(String userId, String encodedImage, Callback<String> callback) {
+        // Decoding and hashing the image takes long enough to drop frames
+        executor.execute(() -> {
+            byte[] bytes;
+            try {
+                bytes = LegacyImages.decode(encodedImage);
+            } catch (IllegalArgumentException exception) {
+                mainHandler.post(() -> callback.onResult(null, exception));
+                return;
+            }
+            String imageHash = AvatarBlobs.hash(bytes);
+            AvatarBlobs.migrateLegacyImage(database, userId, imageHash, bytes)
+                    .addOnCompleteListener(task -> callback.onResult(task.isSuccessful() ? imageHash : null,
+                            task.getException()));
+        });
+    }
+
+    private User toUser(DocumentSnapshot documentSnapshot) {
+        if (!documentSnapshot.exists()) {
+            return null;
+        }
+        User user = new User();
+        user.id = documentSnapshot.getId();
+        user.name = documentSnapshot.getString(Constants.KEY_NAME);
+        user.email = documentSnapshot.getString(Constants.KEY_EMAIL);
+        user.imageHash = getImageHash(documentSnapshot);
+        return user;
+    }
+
+    private String getImageHash(DocumentSnapshot documentSnapshot) {
+        String imageHash = documentSnapshot.getString(Constants.KEY_IMAGE_HASH);
+        String legacyImage = documentSnapshot.getString(Constants.KEY_IMAGE);
+        if (imageHash == null && legacyImage != null) {
+            // Account created before avatars became blobs: move the inline image out of the user document.
+            // The batch is queued by Firestore's offline write queue, so signing in does not wait for it.
+            byte[] bytes;
+            try {
+                bytes = LegacyImages.decode(legacyImage);
+            } catch (IllegalArgumentException exception) {
+                return null; // Unreadable: the account stays without a picture, its document as it was
+            }
+            imageHash = AvatarBlobs.hash(bytes);
+            AvatarBlobs.migrateLegacyImage(database, documentSnapshot.getId(), imageHash, bytes);
+        }
+        return imageHash;
+    }
+}
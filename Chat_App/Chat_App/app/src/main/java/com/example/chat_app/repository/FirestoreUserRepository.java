@@ -0,0 +1,81 @@
+package com.example.chat_app.repository;
+
+import com.example.chat_app.models.User;
+import com.example.chat_app.utilities.Constants;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.MetadataChanges;
+import com.google.firebase.firestore.Query;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+public class FirestoreUserRepository implements UserRepository {
+
+    private final FirebaseFirestore database;
+
+    public FirestoreUserRepository(FirebaseFirestore database) {
+        this.database = database;
+    }
+
+    @Override
+    public Registration listenUsers(long since, Callback<List<User>> listener) {
+        Query query = database.collection(Constants.KEY_COLLECTION_USERS);
+        if (since != 0) {
+            // Only profiles changed since the caller's cache was synced; inclusive, so a profile written in
+            // the same millisecond is not missed (the caller merges by id)
+            query = query.whereGreaterThanOrEqualTo(Constants.KEY_UPDATED_AT, new Date(since));
+        }
+        // Only server-confirmed state is delivered: callers keep the newest updatedAt as their watermark,
+        // and a partial snapshot from Firestore's offline cache could move it past profiles never seen.
+        // Metadata changes are included so the switch from cache to server raises a snapshot.
+        boolean[] synced = {false};
+        ListenerRegistration registration = query.addSnapshotListener(MetadataChanges.INCLUDE, (value, error) -> {
+            if (error != null || value == null) {
+                listener.onResult(null, error);
+                return;
+            }
+            if (value.getMetadata().isFromCache()) {
+                return;
+            }
+            List<User> changed = new ArrayList<>();
+            if (!synced[0]) {
+                // Earlier cache snapshots were skipped, so the first server snapshot is delivered whole
+                synced[0] = true;
+                for (DocumentSnapshot document : value.getDocuments()) {
+                    addConfirmed(changed, document);
+                }
+            } else {
+                for (DocumentChange documentChange : value.getDocumentChanges()) {
+                    if (documentChange.getType() != DocumentChange.Type.REMOVED) {
+                        addConfirmed(changed, documentChange.getDocument());
+                    }
+                }
+            }
+            listener.onResult(changed, null);
+        });
+        return registration::remove;
+    }
+
+    // A local write without its server timestamp yet arrives again once the server confirmed it
+    private static void addConfirmed(List<User> users, DocumentSnapshot document) {
+        if (!document.getMetadata().hasPendingWrites()) {
+            users.add(toUser(document));
+        }
+    }
+
+    private static User toUser(DocumentSnapshot document) {
+        User user = new User();
+        user.name = document.getString(Constants.KEY_NAME);
+        user.email = document.getString(Constants.KEY_EMAIL);
+        user.imageHash = document.getString(Constants.KEY_IMAGE_HASH);
+        user.token = document.getString(Constants.KEY_FCM_TOKEN);
+        user.id = document.getId();
+        Date updatedAt = document.getDate(Constants.KEY_UPDATED_AT);
+        user.updatedAt = updatedAt == null ? 0 : updatedAt.getTime();
+        return user;
+    }
+}
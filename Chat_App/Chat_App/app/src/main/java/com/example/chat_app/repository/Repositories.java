@@ -0,0 +1,43 @@
+package com.example.chat_app.repository;
+
+import com.google.firebase.firestore.FirebaseFirestore;
+
+// The repositories every screen uses. Firestore by default; use() swaps in other backends
+// (e.g. the in-memory ones from :core) before the first screen asks for them.
+public class Repositories {
+
+    private static MessageRepository messages;
+    private static UserRepository users;
+    private static SessionRepository sessions;
+
+    private Repositories() {
+    }
+
+    public static synchronized MessageRepository messages() {
+        if (messages == null) {
+            messages = new FirestoreMessageRepository(FirebaseFirestore.getInstance());
+        }
+        return messages;
+    }
+
+    public static synchronized UserRepository users() {
+        if (users == null) {
+            users = new FirestoreUserRepository(FirebaseFirestore.getInstance());
+        }
+        return users;
+    }
+
+    public static synchronized SessionRepository sessions() {
+        if (sessions == null) {
+            sessions = new FirestoreSessionRepository(FirebaseFirestore.getInstance());
+        }
+        return sessions;
+    }
+
+    public static synchronized void use(MessageRepository messageRepository, UserRepository userRepository,
+                                        SessionRepository sessionRepository) {
+        messages = messageRepository;
+        users = userRepository;
+        sessions = sessionRepository;
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.chat_app.utilities;
+
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.Blob;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Transaction;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.HashMap;
+
+// Avatars live in their own collection as binary blobs whose document id is the SHA-256 of the bytes.
+// User documents only carry that hash, so listing users never downloads pictures,
+// and identical pictures are stored (and cached) once.
+public class AvatarBlobs {
+
+    private AvatarBlobs() {
+    }
+
+    public static String hash(byte[] bytes) {
+        return ContentHash.sha256(bytes);
+    }
+
+    public static DocumentReference reference(FirebaseFirestore database, String imageHash) {
+        return database.collection(Constants.KEY_COLLECTION_AVATARS).document(imageHash);
+    }
+
+    // Writing the same content twice targets the same document, so the set is idempotent
+    public static void put(WriteBatch batch, FirebaseFirestore database, String imageHash, byte[] bytes) {
+        batch.set(reference(database, imageHash), document(bytes));
+    }
+
+    public static void put(Transaction transaction, FirebaseFirestore database, String imageHash, byte[] bytes) {
+        transaction.set(reference(database, imageHash), document(bytes));
+    }
+
+    private static HashMap<String, Object> document(byte[] bytes) {
+        HashMap<String, Object> avatar = new HashMap<>();
+        avatar.put(Constants.KEY_AVATAR_DATA, Blob.fromBytes(bytes));
+        return avatar;
+    }
+
+    // Moves the decoded inline avatar of an existing account (see LegacyImages) into the blob collection.
+    // The blob and the user document change in one batch, so a failed commit leaves the inline image in place.
+    public static Task<Void> migrateLegacyImage(FirebaseFirestore database, String userId, String imageHash, byte[] bytes) {
+        WriteBatch batch = database.batch();
+        put(batch, database, imageHash, bytes);
+        HashMap<String, Object> updates = new HashMap<>();
+        updates.put(Constants.KEY_IMAGE_HASH, imageHash);
+        updates.put(Constants.KEY_IMAGE, FieldValue.delete());
+        updates.put(Constants.KEY_UPDATED_AT, FieldValue.serverTimestamp()); // Directory caches pick up the new avatar
+        batch.update(database.collection(Constants.KEY_COLLECTION_USERS).document(userId), updates);
+        return batch.commit();
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.chat_app.utilities;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import com.example.chat_app.metrics.Histogram;
+import com.example.chat_app.metrics.Metrics;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.Blob;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Process-wide avatar cache shared by every screen that shows a profile picture.
+// Avatars are addressed by the hash of their content (see AvatarBlobs). Level 1 is an LRU of decoded
+// bitmaps sized by their byte count, level 2 is a directory of downloaded blobs, and only a miss on
+// both reads the blob from Firestore. Decoding never runs on the main thread.
+public class AvatarCache {
+
+    public interface Callback {
+        void onAvatarLoaded(Bitmap bitmap);
+    }
+
+    private static final String DIRECTORY_NAME = "avatars";
+    private static final Histogram decodeTime = Metrics.histogram(Metrics.AVATAR_DECODE);
+    private static final Histogram fetchTime = Metrics.histogram(Metrics.AVATAR_FETCH);
+    private static AvatarCache instance;
+
+    private final LruCache<String, Bitmap> memoryCache;
+    private final File diskCacheDirectory;
+    private final FirebaseFirestore database;
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Callbacks waiting for a decode that is already running, so one avatar is never decoded twice at once
+    private final Map<String, List<Callback>> pendingCallbacks = new HashMap<>();
+
+    public static synchronized AvatarCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new AvatarCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private AvatarCache(Context context) {
+        // An eighth of the heap is plenty for a screen full of 150px avatars
+        int maxBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE);
+        memoryCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+        diskCacheDirectory = new File(context.getCacheDir(), DIRECTORY_NAME);
+        database = FirebaseFirestore.getInstance();
+    }
+
+    // Binds the avatar to an ImageView, ignoring results that arrive after the view was recycled
+    public void load(String imageHash, ImageView imageView) {
+        imageView.setTag(imageHash);
+        Bitmap bitmap = imageHash == null ? null : memoryCache.get(imageHash);
+        if (bitmap != null) {
+            imageView.setImageBitmap(bitmap);
+            return;
+        }
+        imageView.setImageBitmap(null);
+        load(imageHash, loaded -> {
+            if (imageHash != null && imageHash.equals(imageView.getTag())) {
+                imageView.setImageBitmap(loaded);
+            }
+        });
+    }
+
+    // Delivers the avatar on the main thread; immediately when it is already in memory
+    public void load(String imageHash, Callback callback) {
+        if (imageHash == null) {
+            callback.onAvatarLoaded(null);
+            return;
+        }
+        Bitmap bitmap = memoryCache.get(imageHash);
+        if (bitmap != null) {
+            callback.onAvatarLoaded(bitmap);
+            return;
+        }
+        synchronized (pendingCallbacks) {
+            List<Callback> callbacks = pendingCallbacks.get(imageHash);
+            if (callbacks != null) {
+                callbacks.add(callback);
+                return;
+            }
+            callbacks = new ArrayList<>();
+            callbacks.add(callback);
+            pendingCallbacks.put(imageHash, callbacks);
+        }
+        executor.execute(() -> {
+            Bitmap decoded = decode(imageHash);
+            if (decoded != null) {
+                memoryCache.put(imageHash, decoded);
+            }
+            mainHandler.post(() -> {
+                List<Callback> callbacks;
+                synchronized (pendingCallbacks) {
+                    callbacks = pendingCallbacks.remove(imageHash);
+                }
+                for (Callback pending : callbacks) {
+                    pending.onAvatarLoaded(decoded);
+                }
+            });
+        });
+    }
+
+    // Seeds the disk level with bytes we already have (e.g. our own avatar right after sign-up)
+    public void put(String imageHash, byte[] bytes) {
+        executor.execute(() -> writeToDisk(new File(diskCacheDirectory, imageHash), bytes));
+    }
+
+    private Bitmap decode(String imageHash) {
+        // Level 2: the blob was downloaded in an earlier session. Content-addressed, so it can never be stale.
+        File file = new File(diskCacheDirectory, imageHash);
+        if (file.exists()) {
+            long startNanos = System.nanoTime();
+            Bitmap bitmap = BitmapFactory.decodeFile(file.getPath());
+            decodeTime.recordSince(startNanos);
+            if (bitmap != null) {
+                return bitmap;
+            }
+        }
+
+        // Miss: fetch the blob once and keep it for every later session
+        byte[] bytes = fetch(imageHash);
+        if (bytes == null) {
+            return null;
+        }
+        writeToDisk(file, bytes);
+        long startNanos = System.nanoTime();
+        Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+        decodeTime.recordSince(startNanos);
+        return bitmap;
+    }
+
+    private byte[] fetch(String imageHash) {
+        long startNanos = System.nanoTime();
+        try {
+            // Already on a background thread, so waiting for the task here is fine
+            DocumentSnapshot document = Tasks.await(AvatarBlobs.reference(database, imageHash).get());
+            fetchTime.recordSince(startNanos);
+            Blob blob = document.getBlob(Constants.KEY_AVATAR_DATA);
+            return blob == null ? null : blob.toBytes();
+        } catch (ExecutionException | InterruptedException e) {
+            return null;
+        }
+    }
+
+    private void writeToDisk(File file, byte[] bytes) {
+        if (!diskCacheDirectory.exists() && !diskCacheDirectory.mkdirs()) {
+            return;
+        }
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(bytes);
+        } catch (IOException e) {
+            // The disk level is best effort, the memory level still has the bitmap
+            file.delete();
+        }
+    }
+}
@@ -6,17 +6,41 @@ public class Constants {
     public static final String KEY_NAME = "name";
     public static final String KEY_EMAIL = "email";
     public static final String KEY_PASSWORD = "password";
+    public static final String KEY_COLLECTION_LOGINS = "logins";
+    public static final String KEY_PASSWORD_HASH = "passwordHash";
+    public static final String KEY_PASSWORD_SALT = "passwordSalt";
+    public static final String KEY_PASSWORD_ITERATIONS = "passwordIterations";
     public static final String KEY_PREFERENCE_NAME = "chatAppPreference";
     public static final String KEY_IS_SIGNED_IN = "isSignedIn";
     public static final String KEY_USER_ID = "userId";
     public static final String KEY_IMAGE = "image";
+    public static final String KEY_IMAGE_HASH = "imageHash";
+    public static final String KEY_UPDATED_AT = "updatedAt";
+    public static final String KEY_COLLECTION_AVATARS = "avatars";
+    public static final String KEY_AVATAR_DATA = "data";
     public static final String KEY_FCM_TOKEN = "fcmToken";
-    public static final String KEY_USER = "user";
+    public static final String KEY_REGISTERED_FCM_TOKEN = "registeredFcmToken";
+    public static final String KEY_REGISTERED_FCM_USER_ID = "registeredFcmUserId";
     public static final String KEY_COLLECTION_CHAT = "chat";
     public static final String KEY_SENDER_ID = "senderId";
     public static final String KEY_RECEIVER_ID = "receiverId";
     public static final String KEY_MESSAGE = "message";
     public static final String KEY_TIMESTAMP = "timestamp";
+    public static final String KEY_CONVERSATION_ID = "conversationId";
+    public static final String KEY_EDITED_AT = "editedAt";
+    public static final String KEY_DELETED = "deleted";
+    public static final String KEY_CONVERSATION_MIGRATED = "conversationMigrated_";
+    public static final String KEY_SYNCED_UNTIL = "syncedUntil_";
+    public static final String KEY_COLLECTION_CONVERSATIONS = "conversations";
+    public static final String KEY_PEER_ID = "peerId";
+    public static final String KEY_PEER_NAME = "peerName";
+    public static final String KEY_PEER_IMAGE_HASH = "peerImageHash";
+    public static final String KEY_LAST_MESSAGE = "lastMessage";
+    public static final String KEY_LAST_MESSAGE_ID = "lastMessageId";
+    public static final String KEY_UNREAD_COUNT = "unreadCount";
+    public static final String KEY_MESSAGE_ID = "messageId";
+    public static final String KEY_NAME_SENDER = "senderName";
+    public static final String KEY_IMAGE_HASH_SENDER = "senderImageHash";
 
 
 }
@@ -0,0 +1,97 @@
+package com.example.chat_app.utilities;
+
+import com.example.chat_app.models.ChatMessage;
+import com.example.chat_app.models.User;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.Date;
+import java.util.HashMap;
+
+// Every user has a small conversations sub-collection with one document per peer holding the last
+// message, its time and the unread count. It is kept up to date in the same batch that writes the
+// messages, so the home screen reads a few documents instead of scanning chat or users.
+public class ConversationIndex {
+
+    private ConversationIndex() {
+    }
+
+    public static CollectionReference collection(FirebaseFirestore database, String userId) {
+        return database.collection(Constants.KEY_COLLECTION_USERS).document(userId)
+                .collection(Constants.KEY_COLLECTION_CONVERSATIONS);
+    }
+
+    public static DocumentReference reference(FirebaseFirestore database, String userId, String peerId) {
+        return collection(database, userId).document(peerId);
+    }
+
+    // Writes the last message of a conversation into both participants' index.
+    // sender and receiver may be null when their profile is not known in this process;
+    // the merge then keeps the name and avatar already stored in the entry.
+    public static void put(WriteBatch batch, FirebaseFirestore database, ChatMessage lastMessage,
+                           int messageCount, User sender, User receiver) {
+        // The sender has read its own messages, the receiver gets them as unread
+        batch.set(reference(database, lastMessage.senderId, lastMessage.receiverId),
+                entry(lastMessage, lastMessage.receiverId, receiver, 0), SetOptions.merge());
+        batch.set(reference(database, lastMessage.receiverId, lastMessage.senderId),
+                entry(lastMessage, lastMessage.senderId, sender, messageCount), SetOptions.merge());
+    }
+
+    // After an edit or delete: entries whose last message is the changed one show its new text, none for a
+    // delete. Checked and written in one transaction, so a message sent in the meantime is never overwritten.
+    public static void replaceLastMessage(FirebaseFirestore database, ChatMessage changedMessage) {
+        DocumentReference senderEntry = reference(database, changedMessage.senderId, changedMessage.receiverId);
+        DocumentReference receiverEntry = reference(database, changedMessage.receiverId, changedMessage.senderId);
+        database.runTransaction(transaction -> {
+            boolean isSenderLast = isLastMessage(transaction.get(senderEntry), changedMessage);
+            boolean isReceiverLast = isLastMessage(transaction.get(receiverEntry), changedMessage);
+            if (isSenderLast) {
+                transaction.update(senderEntry, Constants.KEY_LAST_MESSAGE, changedMessage.message);
+            }
+            if (isReceiverLast) {
+                transaction.update(receiverEntry, Constants.KEY_LAST_MESSAGE, changedMessage.message);
+            }
+            return null;
+        });
+    }
+
+    private static boolean isLastMessage(DocumentSnapshot entry, ChatMessage chatMessage) {
+        if (!entry.exists()) {
+            return false;
+        }
+        String lastMessageId = entry.getString(Constants.KEY_LAST_MESSAGE_ID);
+        if (lastMessageId != null) {
+            return lastMessageId.equals(chatMessage.id);
+        }
+        // Entries written before the id was stored: the time identifies the message well enough
+        Date timestamp = entry.getDate(Constants.KEY_TIMESTAMP);
+        return timestamp != null && timestamp.getTime() == chatMessage.timestamp;
+    }
+
+    public static void markRead(FirebaseFirestore database, String userId, String peerId) {
+        HashMap<String, Object> updates = new HashMap<>();
+        updates.put(Constants.KEY_UNREAD_COUNT, 0);
+        reference(database, userId, peerId).set(updates, SetOptions.merge());
+    }
+
+    private static HashMap<String, Object> entry(ChatMessage lastMessage, String peerId, User peer, int unreadIncrement) {
+        HashMap<String, Object> entry = new HashMap<>();
+        entry.put(Constants.KEY_CONVERSATION_ID, lastMessage.conversationId);
+        entry.put(Constants.KEY_PEER_ID, peerId);
+        entry.put(Constants.KEY_LAST_MESSAGE, lastMessage.message);
+        entry.put(Constants.KEY_LAST_MESSAGE_ID, lastMessage.id);
+        entry.put(Constants.KEY_TIMESTAMP, new Date(lastMessage.timestamp));
+        // Incremented on the server, so concurrent senders never lose a count
+        entry.put(Constants.KEY_UNREAD_COUNT, unreadIncrement > 0 ? FieldValue.increment(unreadIncrement) : 0);
+        if (peer != null) {
+            entry.put(Constants.KEY_PEER_NAME, peer.name);
+            entry.put(Constants.KEY_PEER_IMAGE_HASH, peer.imageHash);
+        }
+        return entry;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.chat_app.utilities;
+
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Collects items handed over on the main thread and applies them together once per frame,
+// so a burst of deliveries costs one adapter update instead of one per delivery.
+// Main thread only.
+public class FrameBatcher<T> {
+
+    public interface Consumer<T> {
+        void apply(List<T> items);
+    }
+
+    private final Consumer<T> consumer;
+    private final List<T> pending = new ArrayList<>();
+    private boolean scheduled;
+    private final Choreographer.FrameCallback frameCallback = frameTimeNanos -> flush();
+
+    public FrameBatcher(Consumer<T> consumer) {
+        this.consumer = consumer;
+    }
+
+    public void addAll(List<T> items) {
+        pending.addAll(items);
+        if (!scheduled) {
+            scheduled = true;
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        }
+    }
+
+    public boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    public void cancel() {
+        Choreographer.getInstance().removeFrameCallback(frameCallback);
+        scheduled = false;
+        pending.clear();
+    }
+
+    private void flush() {
+        scheduled = false;
+        List<T> items = new ArrayList<>(pending);
+        pending.clear();
+        consumer.apply(items);
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.chat_app.utilities;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Build;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+// Turns a picked gallery image into a small avatar without ever holding the full-resolution bitmap.
+// The source is read three times as a stream (bounds, EXIF, pixels), so peak memory depends on the
+// target size only, not on the camera resolution. Call from a background thread.
+public class ImageIngestion {
+
+    public static final int AVATAR_WIDTH = 150;
+    private static final int AVATAR_QUALITY = 70;
+
+    public static class Result {
+        public final Bitmap bitmap;
+        public final byte[] bytes;
+
+        Result(Bitmap bitmap, byte[] bytes) {
+            this.bitmap = bitmap;
+            this.bytes = bytes;
+        }
+    }
+
+    private ImageIngestion() {
+    }
+
+    public static Result ingest(ContentResolver contentResolver, Uri uri) throws IOException {
+        // 1. Read only the header to learn the dimensions
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream inputStream = contentResolver.openInputStream(uri)) {
+            BitmapFactory.decodeStream(inputStream, null, options);
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Unsupported image");
+        }
+
+        // 2. Let the decoder skip pixels: a power-of-two sample size straight to near-target size
+        int orientation = readOrientation(contentResolver, uri);
+        int sourceWidth = swapsSides(orientation) ? options.outHeight : options.outWidth;
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateSampleSize(sourceWidth, AVATAR_WIDTH);
+        Bitmap sampled;
+        try (InputStream inputStream = contentResolver.openInputStream(uri)) {
+            sampled = BitmapFactory.decodeStream(inputStream, null, options);
+        }
+        if (sampled == null) {
+            throw new IOException("Unable to decode image");
+        }
+
+        // 3. Upright and exact width in a single transform
+        Bitmap avatar = transform(sampled, orientation);
+
+        // 4. WebP is noticeably smaller than JPEG at the same visual quality
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        avatar.compress(getCompressFormat(), AVATAR_QUALITY, outputStream);
+        return new Result(avatar, outputStream.toByteArray());
+    }
+
+    // Largest power of two that keeps the decoded width at or above the target
+    private static int calculateSampleSize(int sourceWidth, int targetWidth) {
+        int sampleSize = 1;
+        while (sourceWidth / (sampleSize * 2) >= targetWidth) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static int readOrientation(ContentResolver contentResolver, Uri uri) {
+        try (InputStream inputStream = contentResolver.openInputStream(uri)) {
+            if (inputStream == null) {
+                return ExifInterface.ORIENTATION_NORMAL;
+            }
+            return new ExifInterface(inputStream)
+                    .getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        } catch (IOException e) {
+            // Not every format carries EXIF data, treat it as upright
+            return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+
+    private static Bitmap transform(Bitmap bitmap, int orientation) {
+        Matrix matrix = new Matrix();
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.setScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                matrix.setRotate(180);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                matrix.setScale(1, -1);
+                break;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                matrix.setRotate(90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                matrix.setRotate(90);
+                break;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                matrix.setRotate(-90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                matrix.setRotate(-90);
+                break;
+            default:
+                break;
+        }
+        int uprightWidth = swapsSides(orientation) ? bitmap.getHeight() : bitmap.getWidth();
+        float scale = Math.min(1f, (float) AVATAR_WIDTH / uprightWidth);
+        matrix.postScale(scale, scale);
+        if (matrix.isIdentity()) {
+            return bitmap;
+        }
+        Bitmap transformed = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        if (transformed != bitmap) {
+            bitmap.recycle();
+        }
+        return transformed;
+    }
+
+    // Orientations that turn the stored width into the displayed height
+    private static boolean swapsSides(int orientation) {
+        return orientation == ExifInterface.ORIENTATION_ROTATE_90
+                || orientation == ExifInterface.ORIENTATION_ROTATE_270
+                || orientation == ExifInterface.ORIENTATION_TRANSPOSE
+                || orientation == ExifInterface.ORIENTATION_TRANSVERSE;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat getCompressFormat() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            return Bitmap.CompressFormat.WEBP_LOSSY;
+        }
+        return Bitmap.CompressFormat.WEBP;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.chat_app.utilities;
+
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.util.HashMap;
+import java.util.Locale;
+
+// One document per account, keyed by the normalized email: logins/{email} -> userId, salted password hash.
+// Signing in is a direct get of that document plus a local hash check, instead of a query over users,
+// and the password itself is never stored.
+public class LoginIndex {
+
+    private LoginIndex() {
+    }
+
+    // "  Dana@Example.com " and "dana@example.com" are the same account
+    public static String normalizeEmail(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    public static DocumentReference reference(FirebaseFirestore database, String email) {
+        // Document ids cannot contain '/', which is legal (if rare) in an email address
+        String id = normalizeEmail(email).replace("%", "%25").replace("/", "%2F");
+        return database.collection(Constants.KEY_COLLECTION_LOGINS).document(id);
+    }
+
+    // Hashes the password; slow, so call it off the main thread
+    public static HashMap<String, Object> entry(String userId, String password) {
+        String salt = PasswordHasher.newSalt();
+        HashMap<String, Object> login = new HashMap<>();
+        login.put(Constants.KEY_USER_ID, userId);
+        login.put(Constants.KEY_PASSWORD_SALT, salt);
+        login.put(Constants.KEY_PASSWORD_ITERATIONS, PasswordHasher.ITERATIONS);
+        login.put(Constants.KEY_PASSWORD_HASH, PasswordHasher.hash(password, salt, PasswordHasher.ITERATIONS));
+        return login;
+    }
+}
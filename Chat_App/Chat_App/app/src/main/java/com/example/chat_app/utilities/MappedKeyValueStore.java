@@ -0,0 +1,166 @@
+package com.example.chat_app.utilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+// Small key-value file for preferences written on hot paths (e.g. a sync watermark per snapshot).
+// The file is memory-mapped and used as an append-only log, so a write is a few bytes copied into
+// memory instead of the full XML rewrite SharedPreferences does; the kernel writes the pages back,
+// which also happens when the process is killed. The header holds the end of the log and is updated
+// after the record, so a write torn by a crash is simply not replayed. When the log is full it is
+// compacted down to the live values, growing the file if they no longer fit.
+public class MappedKeyValueStore {
+
+    private static final int INITIAL_SIZE = 16 * 1024;
+    private static final int HEADER_SIZE = 4; // int: end of the log
+
+    private static final byte TYPE_REMOVE = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_LONG = 2;
+    private static final byte TYPE_BOOLEAN = 3;
+
+    private final RandomAccessFile file;
+    private final Map<String, Object> values = new HashMap<>();
+    private MappedByteBuffer buffer;
+
+    public MappedKeyValueStore(File path) throws IOException {
+        file = new RandomAccessFile(path, "rw");
+        map(Math.max(INITIAL_SIZE, (int) file.length()));
+        replay();
+    }
+
+    // Everything currently stored, read once when the preference snapshot is built
+    public synchronized Map<String, Object> getAll() {
+        return new HashMap<>(values);
+    }
+
+    // value is a String, Long or Boolean; null removes the key
+    public synchronized void put(String key, Object value) {
+        if (value == null) {
+            if (values.remove(key) == null) {
+                return;
+            }
+        } else {
+            values.put(key, value);
+        }
+        byte[] record = encode(key, value);
+        int end = buffer.getInt(0);
+        if (end + record.length > buffer.capacity()) {
+            compact(record.length);
+            end = buffer.getInt(0);
+        }
+        buffer.position(end);
+        buffer.put(record);
+        buffer.putInt(0, end + record.length);
+    }
+
+    public synchronized void clear() {
+        values.clear();
+        buffer.putInt(0, HEADER_SIZE);
+    }
+
+    private void map(int size) throws IOException {
+        buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private void replay() {
+        int end = buffer.getInt(0);
+        if (end < HEADER_SIZE || end > buffer.capacity()) {
+            // New (all zero) or unreadable file: start an empty log
+            buffer.putInt(0, HEADER_SIZE);
+            return;
+        }
+        buffer.position(HEADER_SIZE);
+        while (buffer.position() < end) {
+            byte type = buffer.get();
+            String key = readString(buffer, buffer.getShort());
+            switch (type) {
+                case TYPE_STRING:
+                    values.put(key, readString(buffer, buffer.getInt()));
+                    break;
+                case TYPE_LONG:
+                    values.put(key, buffer.getLong());
+                    break;
+                case TYPE_BOOLEAN:
+                    values.put(key, buffer.get() != 0);
+                    break;
+                default:
+                    values.remove(key);
+                    break;
+            }
+        }
+    }
+
+    // Rewrites the log with one record per live key, so there is room for at least one more record
+    private void compact(int spareBytes) {
+        ByteBuffer live = ByteBuffer.allocate(encodedSize() + spareBytes);
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            live.put(encode(entry.getKey(), entry.getValue()));
+        }
+        int needed = HEADER_SIZE + live.capacity();
+        if (needed > buffer.capacity()) {
+            int size = buffer.capacity();
+            while (size < needed) {
+                size *= 2;
+            }
+            try {
+                map(size);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        // A crash in the middle loses the hot keys instead of replaying a half-written log;
+        // they only hold values that can be recomputed (e.g. a watermark falls back to a full sync)
+        buffer.putInt(0, HEADER_SIZE);
+        buffer.position(HEADER_SIZE);
+        live.flip();
+        buffer.put(live);
+        buffer.putInt(0, HEADER_SIZE + live.limit());
+    }
+
+    private int encodedSize() {
+        int size = 0;
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            size += encode(entry.getKey(), entry.getValue()).length;
+        }
+        return size;
+    }
+
+    private static byte[] encode(String key, Object value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] stringBytes = value instanceof String ? ((String) value).getBytes(StandardCharsets.UTF_8) : null;
+        int valueSize = value == null ? 0
+                : value instanceof Long ? 8
+                : value instanceof Boolean ? 1
+                : 4 + stringBytes.length;
+        ByteBuffer record = ByteBuffer.allocate(1 + 2 + keyBytes.length + valueSize);
+        record.put(value == null ? TYPE_REMOVE
+                : value instanceof Long ? TYPE_LONG
+                : value instanceof Boolean ? TYPE_BOOLEAN
+                : TYPE_STRING);
+        record.putShort((short) keyBytes.length);
+        record.put(keyBytes);
+        if (value instanceof Long) {
+            record.putLong((Long) value);
+        } else if (value instanceof Boolean) {
+            record.put((byte) ((Boolean) value ? 1 : 0));
+        } else if (stringBytes != null) {
+            record.putInt(stringBytes.length);
+            record.put(stringBytes);
+        }
+        return record.array();
+    }
+
+    private static String readString(ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
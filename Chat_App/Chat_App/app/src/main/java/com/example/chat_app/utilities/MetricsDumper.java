@@ -0,0 +1,50 @@
+package com.example.chat_app.utilities;
+
+import android.content.Context;
+
+import com.example.chat_app.metrics.Metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Writes the metrics registry to files/metrics.txt once a minute, so numbers from a device can be
+// pulled (adb shell run-as com.example.chat_app cat files/metrics.txt) without the debug screen.
+// The file is replaced atomically and only ever holds the latest dump.
+public class MetricsDumper {
+
+    private static final String FILE_NAME = "metrics.txt";
+    private static final long INTERVAL_SECONDS = 60;
+
+    private static ScheduledExecutorService executor;
+
+    private MetricsDumper() {
+    }
+
+    public static synchronized void start(Context context) {
+        if (executor != null) {
+            return;
+        }
+        File directory = context.getApplicationContext().getFilesDir();
+        executor = Executors.newSingleThreadScheduledExecutor();
+        executor.scheduleWithFixedDelay(() -> dump(directory), INTERVAL_SECONDS, INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static void dump(File directory) {
+        File temporary = new File(directory, FILE_NAME + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temporary), StandardCharsets.UTF_8)) {
+            writer.append("time ").append(String.valueOf(System.currentTimeMillis())).append('\n');
+            Metrics.dump(writer);
+        } catch (IOException e) {
+            temporary.delete();
+            return;
+        }
+        temporary.renameTo(new File(directory, FILE_NAME));
+    }
+}
@@ -3,37 +3,166 @@ package com.example.chat_app.utilities;
 import android.content.Context;
 import android.content.SharedPreferences;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Every instance shares one in-memory snapshot of all preferences, loaded once per process,
+// so reads never touch SharedPreferences or its lock. Writes update the snapshot first and are then
+// persisted: related values go through edit() as one transaction (one file write instead of one per key),
+// and keys written on hot paths (see MAPPED_KEY_PREFIXES) go to a memory-mapped file instead of the XML.
 public class PreferenceManager {
 
-    private final SharedPreferences sharedPreferences;
+    public interface Transaction {
+        void run(Editor editor);
+    }
+
+    // Rewritten often enough that a full XML rewrite per write would show up (e.g. once per chat snapshot)
+    private static final String[] MAPPED_KEY_PREFIXES = {Constants.KEY_SYNCED_UNTIL};
+    private static final String MAPPED_FILE_NAME = Constants.KEY_PREFERENCE_NAME + ".kv";
+
+    private static final Map<String, Object> snapshot = new ConcurrentHashMap<>();
+    private static SharedPreferences sharedPreferences;
+    private static MappedKeyValueStore mappedStore; // Null when the file could not be mapped
 
     public PreferenceManager(Context context) {
+        load(context.getApplicationContext());
+    }
+
+    private static synchronized void load(Context context) {
+        if (sharedPreferences != null) {
+            return;
+        }
         sharedPreferences = context.getSharedPreferences(Constants.KEY_PREFERENCE_NAME, Context.MODE_PRIVATE);
+        snapshot.putAll(sharedPreferences.getAll());
+        try {
+            mappedStore = new MappedKeyValueStore(new File(context.getFilesDir(), MAPPED_FILE_NAME));
+            snapshot.putAll(mappedStore.getAll());
+        } catch (IOException e) {
+            // Optional backend: hot keys then live in SharedPreferences like everything else
+            mappedStore = null;
+        }
     }
 
-    public void putBoolean(String key, Boolean value) {
-        SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.putBoolean(key, value);
+    // Applies all changes made in the transaction with a single SharedPreferences write
+    public void edit(Transaction transaction) {
+        Editor editor = new Editor(sharedPreferences.edit());
+        transaction.run(editor);
         editor.apply();
     }
 
+    public void putBoolean(String key, Boolean value) {
+        edit(editor -> editor.putBoolean(key, value));
+    }
+
     public Boolean getBoolean(String key) {
-        return sharedPreferences.getBoolean(key, false);
+        Object value = snapshot.get(key);
+        return value instanceof Boolean ? (Boolean) value : false;
     }
 
     public void putString(String key, String value) {
-        SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.putString(key, value);
-        editor.apply();
+        edit(editor -> editor.putString(key, value));
     }
 
     public String getString(String key) {
-        return sharedPreferences.getString(key, null);
+        Object value = snapshot.get(key);
+        return value instanceof String ? (String) value : null;
+    }
+
+    public void putLong(String key, long value) {
+        edit(editor -> editor.putLong(key, value));
+    }
+
+    public long getLong(String key) {
+        Object value = snapshot.get(key);
+        return value instanceof Long ? (Long) value : 0;
+    }
+
+    public void remove(String key) {
+        edit(editor -> editor.remove(key));
     }
 
     public void clear() {
-        SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.clear();
-        editor.apply();
+        edit(Editor::clear);
+    }
+
+    private static boolean isMappedKey(String key) {
+        if (mappedStore == null) {
+            return false;
+        }
+        for (String prefix : MAPPED_KEY_PREFIXES) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Collects the changes of one transaction; the snapshot is updated as they are made
+    public static class Editor {
+
+        private final SharedPreferences.Editor editor;
+        private boolean changed;
+
+        private Editor(SharedPreferences.Editor editor) {
+            this.editor = editor;
+        }
+
+        public Editor putBoolean(String key, boolean value) {
+            return put(key, value);
+        }
+
+        public Editor putString(String key, String value) {
+            return put(key, value);
+        }
+
+        public Editor putLong(String key, long value) {
+            return put(key, value);
+        }
+
+        public Editor remove(String key) {
+            return put(key, null);
+        }
+
+        public Editor clear() {
+            snapshot.clear();
+            if (mappedStore != null) {
+                mappedStore.clear();
+            }
+            editor.clear();
+            changed = true;
+            return this;
+        }
+
+        private Editor put(String key, Object value) {
+            if (value == null) {
+                snapshot.remove(key);
+            } else {
+                snapshot.put(key, value);
+            }
+            if (isMappedKey(key)) {
+                mappedStore.put(key, value);
+                return this;
+            }
+            if (value == null) {
+                editor.remove(key);
+            } else if (value instanceof Boolean) {
+                editor.putBoolean(key, (Boolean) value);
+            } else if (value instanceof Long) {
+                editor.putLong(key, (Long) value);
+            } else {
+                editor.putString(key, (String) value);
+            }
+            changed = true;
+            return this;
+        }
+
+        private void apply() {
+            // A transaction that only touched mapped keys costs no XML write at all
+            if (changed) {
+                editor.apply();
+            }
+        }
     }
 }
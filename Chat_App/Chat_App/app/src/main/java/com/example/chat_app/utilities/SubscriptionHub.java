@@ -0,0 +1,201 @@
+package com.example.chat_app.utilities;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.chat_app.repository.Callback;
+import com.example.chat_app.repository.Registration;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Process-wide owner of the realtime listeners. Screens subscribe by key (one key per query, e.g. a
+// conversation) and share a single upstream listener per key; a screen pauses its subscription in
+// onStop, and once no subscription of a key is active the upstream listener is detached after a grace
+// period. The value delivered so far is kept, so a screen that comes back (e.g. after a rotation)
+// renders at once from it instead of waiting for, and paying for, a new listener's first snapshot.
+// Main thread only, like the listeners it wraps.
+public class SubscriptionHub {
+
+    // Attaches the upstream listener for a key. Called again each time the listener is re-attached after
+    // a detach, so a source should read where to start (e.g. a watermark) when called, not when created.
+    public interface Source<T> {
+        Registration listen(Callback<T> listener);
+    }
+
+    // Folds a delivery into what was delivered before: the latest value for full snapshots,
+    // the accumulated deltas for listeners that only deliver changes
+    public interface Merger<T> {
+        T merge(T previous, T delivery);
+    }
+
+    // Long enough to cover a rotation or a quick trip to another screen and back
+    private static final long DETACH_GRACE_MILLIS = 30 * 1000;
+
+    private static final SubscriptionHub instance = new SubscriptionHub();
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, Entry<?>> entries = new HashMap<>();
+
+    public static SubscriptionHub getInstance() {
+        return instance;
+    }
+
+    private SubscriptionHub() {
+    }
+
+    public static <T> Merger<T> latest() {
+        return (previous, delivery) -> delivery;
+    }
+
+    // Subscriptions with the same key share one upstream listener; source and merger of the first
+    // subscriber are used, so a key must always name the same query, including its parameters. The listener is called right away
+    // with the value delivered so far, if any, then with every new delivery while the subscription is active.
+    @SuppressWarnings("unchecked")
+    public <T> Subscription<T> subscribe(String key, Source<T> source, Merger<T> merger, Callback<T> listener) {
+        Entry<T> entry = (Entry<T>) entries.get(key);
+        if (entry == null) {
+            entry = new Entry<>(key, source, merger);
+            entries.put(key, entry);
+        }
+        Subscription<T> subscription = new Subscription<>(entry, listener);
+        entry.subscriptions.add(subscription);
+        if (entry.hasValue) {
+            listener.onResult(entry.value, null);
+        }
+        entry.activeChanged();
+        return subscription;
+    }
+
+    public class Subscription<T> {
+
+        private final Entry<T> entry;
+        private final Callback<T> listener;
+        private boolean active = true;
+        private boolean removed;
+        private T missed; // Deliveries while paused, merged
+        private boolean hasMissed;
+
+        private Subscription(Entry<T> entry, Callback<T> listener) {
+            this.entry = entry;
+            this.listener = listener;
+        }
+
+        // Stops deliveries (e.g. in onStop); what arrives meanwhile is handed over by resume()
+        public void pause() {
+            if (removed || !active) {
+                return;
+            }
+            active = false;
+            entry.activeChanged();
+        }
+
+        public void resume() {
+            if (removed || active) {
+                return;
+            }
+            active = true;
+            if (hasMissed) {
+                T delivery = missed;
+                missed = null;
+                hasMissed = false;
+                listener.onResult(delivery, null);
+            }
+            entry.activeChanged();
+        }
+
+        public void remove() {
+            if (removed) {
+                return;
+            }
+            removed = true;
+            active = false;
+            missed = null;
+            entry.subscriptions.remove(this);
+            entry.activeChanged();
+        }
+
+        private void deliver(T delivery, Exception error) {
+            if (active) {
+                listener.onResult(delivery, error);
+            } else if (error == null) {
+                missed = hasMissed ? entry.merger.merge(missed, delivery) : delivery;
+                hasMissed = true;
+            }
+        }
+    }
+
+    private class Entry<T> implements Callback<T> {
+
+        private final String key;
+        private final Source<T> source;
+        private final Merger<T> merger;
+        private final List<Subscription<T>> subscriptions = new ArrayList<>();
+        private Registration upstream;
+        private boolean awaitingFirst; // The next delivery is a new listener's full initial value
+        private T value;
+        private boolean hasValue;
+        private final Runnable detach = this::detach;
+
+        private Entry(String key, Source<T> source, Merger<T> merger) {
+            this.key = key;
+            this.source = source;
+            this.merger = merger;
+        }
+
+        @Override
+        public void onResult(T delivery, Exception error) {
+            if (error == null) {
+                value = hasValue && !awaitingFirst ? merger.merge(value, delivery) : delivery;
+                hasValue = true;
+                awaitingFirst = false;
+            }
+            for (Subscription<T> subscription : new ArrayList<>(subscriptions)) {
+                subscription.deliver(delivery, error);
+            }
+        }
+
+        private void activeChanged() {
+            if (hasActiveSubscription()) {
+                mainHandler.removeCallbacks(detach);
+                if (upstream == null) {
+                    awaitingFirst = true;
+                    upstream = source.listen(this);
+                }
+            } else if (subscriptions.isEmpty() && upstream == null) {
+                forget();
+            } else {
+                mainHandler.removeCallbacks(detach);
+                mainHandler.postDelayed(detach, DETACH_GRACE_MILLIS);
+            }
+        }
+
+        private boolean hasActiveSubscription() {
+            for (Subscription<T> subscription : subscriptions) {
+                if (subscription.active) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void detach() {
+            if (upstream != null) {
+                upstream.remove();
+                upstream = null;
+            }
+            // Paused subscriptions keep the entry; they re-attach when resumed
+            if (subscriptions.isEmpty()) {
+                forget();
+            }
+        }
+
+        private void forget() {
+            if (entries.get(key) == this) {
+                entries.remove(key);
+            }
+        }
+    }
+}
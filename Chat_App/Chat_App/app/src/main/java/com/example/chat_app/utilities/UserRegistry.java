@@ -0,0 +1,61 @@
+package com.example.chat_app.utilities;
+
+import android.content.Intent;
+
+import com.example.chat_app.models.User;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// In-process index of every user this process has loaded, so screens can hand each other
+// a user id and resolve it in O(1) instead of shipping the whole object through the intent.
+public class UserRegistry {
+
+    private static final UserRegistry instance = new UserRegistry();
+
+    private final Map<String, User> users = new ConcurrentHashMap<>();
+
+    public static UserRegistry getInstance() {
+        return instance;
+    }
+
+    private UserRegistry() {
+    }
+
+    public void put(User user) {
+        users.put(user.id, user);
+    }
+
+    public void putAll(Collection<User> users) {
+        for (User user : users) {
+            put(user);
+        }
+    }
+
+    public User get(String userId) {
+        return userId == null ? null : users.get(userId);
+    }
+
+    // Hands a user to another screen: the id, plus name and avatar hash in case the registry is gone
+    // by the time it is read (e.g. the process was recreated)
+    public static void putExtras(Intent intent, User user) {
+        intent.putExtra(Constants.KEY_USER_ID, user.id);
+        intent.putExtra(Constants.KEY_NAME, user.name);
+        intent.putExtra(Constants.KEY_IMAGE_HASH, user.imageHash);
+    }
+
+    // The user handed over with putExtras, registering it again when only the extras survived
+    public User get(Intent intent) {
+        String userId = intent.getStringExtra(Constants.KEY_USER_ID);
+        User user = get(userId);
+        if (user == null) {
+            user = new User();
+            user.id = userId;
+            user.name = intent.getStringExtra(Constants.KEY_NAME);
+            user.imageHash = intent.getStringExtra(Constants.KEY_IMAGE_HASH);
+            put(user);
+        }
+        return user;
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.chat_app.benchmark;
+
+import com.example.chat_app.utilities.LegacyImages;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Decoding an inline Base64 avatar of a legacy account, in the line-wrapped form Android wrote them
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AvatarDecodeBenchmark {
+
+    // About a 150px WebP avatar, and a large legacy JPEG
+    @Param({"8192", "65536"})
+    public int imageBytes;
+
+    private String encodedImage;
+
+    @Setup
+    public void setUp() {
+        byte[] bytes = new byte[imageBytes];
+        new Random(42).nextBytes(bytes);
+        encodedImage = Base64.getMimeEncoder().encodeToString(bytes);
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        return LegacyImages.decode(encodedImage);
+    }
+}
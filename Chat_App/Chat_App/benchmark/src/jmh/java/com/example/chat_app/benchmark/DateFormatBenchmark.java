@@ -0,0 +1,61 @@
+package com.example.chat_app.benchmark;
+
+import com.example.chat_app.models.ChatMessage;
+import com.example.chat_app.utilities.MessageDateFormatter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+// Formatting the timestamps of one screen of messages.
+// The baseline creates a SimpleDateFormat per message, as getReadableDateTime used to.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DateFormatBenchmark {
+
+    private static final int SCREEN_SIZE = 20;
+
+    private long[] timestamps;
+    private MessageDateFormatter dateFormatter;
+
+    @Setup
+    public void setUp() {
+        // Fixed locale and zone, so results do not depend on the machine
+        Locale.setDefault(Locale.US);
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+        List<ChatMessage> messages = Messages.conversation(SCREEN_SIZE, 42);
+        timestamps = new long[SCREEN_SIZE];
+        for (int i = 0; i < SCREEN_SIZE; i++) {
+            timestamps[i] = messages.get(i).timestamp;
+        }
+        dateFormatter = new MessageDateFormatter();
+    }
+
+    @Benchmark
+    public void messageDateFormatter(Blackhole blackhole) {
+        for (long timestamp : timestamps) {
+            blackhole.consume(dateFormatter.format(timestamp));
+        }
+    }
+
+    @Benchmark
+    public void simpleDateFormatPerMessage(Blackhole blackhole) {
+        for (long timestamp : timestamps) {
+            blackhole.consume(new SimpleDateFormat("MMMM dd, yyyy - hh:mm a", Locale.getDefault())
+                    .format(new Date(timestamp)));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.chat_app.benchmark;
+
+import com.example.chat_app.metrics.Histogram;
+import com.example.chat_app.metrics.Metrics;
+import com.example.chat_app.models.ChatMessage;
+import com.example.chat_app.models.User;
+import com.example.chat_app.repository.InMemoryMessageRepository;
+import com.example.chat_app.repository.LoadGenerator;
+import com.example.chat_app.repository.Registration;
+import com.example.chat_app.utilities.MessageLog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Drives synthetic traffic through the realtime listener path and measures how fast the UI side keeps up.
+// A single thread stands in for the main thread: it receives every delivery and applies it to a bounded
+// MessageLog window the way ChatActivity does. Run with:
+//   ./gradlew :benchmark:loadTest [-PloadArgs="<messages/sec> <batch size> <seconds>"]
+public class ListenerLoadTest {
+
+    private static final int MAX_WINDOW_SIZE = 200; // ChatActivity.MAX_WINDOW_SIZE
+
+    public static void main(String[] args) throws InterruptedException {
+        int messagesPerSecond = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        ExecutorService mainThread = Executors.newSingleThreadExecutor();
+        InMemoryMessageRepository repository = new InMemoryMessageRepository(mainThread);
+        LoadGenerator generator = new LoadGenerator(repository, user(Messages.USER_A), user(Messages.USER_B));
+
+        Histogram deliveryLatency = Metrics.histogram(Metrics.CHAT_SNAPSHOT_DELIVERY);
+        Histogram applyTime = Metrics.histogram(Metrics.CHAT_SNAPSHOT_APPLY);
+        AtomicLong received = new AtomicLong();
+        MessageLog window = new MessageLog();
+        Registration registration = repository.listenMessages(generator.getConversationId(), 0, MAX_WINDOW_SIZE,
+                (chatMessages, error) -> {
+                    long startNanos = System.nanoTime();
+                    long now = System.currentTimeMillis();
+                    List<ChatMessage> newMessages = new ArrayList<>(chatMessages.size());
+                    for (ChatMessage chatMessage : chatMessages) {
+                        deliveryLatency.record((now - chatMessage.timestamp) * 1000);
+                        if (!window.contains(chatMessage)) {
+                            newMessages.add(chatMessage);
+                        }
+                    }
+                    window.insertAll(newMessages, (positionStart, itemCount) -> {
+                    });
+                    int excess = window.size() - MAX_WINDOW_SIZE;
+                    if (excess > 0) {
+                        window.removeFirst(excess, (positionStart, itemCount) -> {
+                        });
+                    }
+                    received.addAndGet(chatMessages.size());
+                    applyTime.recordSince(startNanos);
+                });
+
+        long startNanos = System.nanoTime();
+        long sent = generator.run(messagesPerSecond, batchSize, TimeUnit.SECONDS.toMillis(seconds));
+        long sendNanos = System.nanoTime() - startNanos;
+        // Let the listener drain what is still queued, the backlog is part of the measurement
+        mainThread.submit(registration::remove);
+        mainThread.shutdown();
+        mainThread.awaitTermination(1, TimeUnit.MINUTES);
+        long totalNanos = System.nanoTime() - startNanos;
+
+        System.out.printf("target %d msg/s, batch %d: sent %d in %.1f s (%.0f msg/s), applied %d in %.1f s (%.0f msg/s)%n",
+                messagesPerSecond, batchSize,
+                sent, sendNanos / 1e9, sent / (sendNanos / 1e9),
+                received.get(), totalNanos / 1e9, received.get() / (totalNanos / 1e9));
+        System.out.print(Metrics.dump());
+    }
+
+    private static User user(String id) {
+        User user = new User();
+        user.id = id;
+        user.name = id;
+        return user;
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.chat_app.benchmark;
+
+import com.example.chat_app.models.ChatMessage;
+import com.example.chat_app.utilities.MessageLog;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Applying one hub delivery to the message window, as ChatActivity's messagesListener and
+// applyIncomingMessages do: skip messages already shown, apply edits to their rows, drop messages older
+// than the window and insert the rest in order.
+// The baseline is the original approach: append everything and re-sort the whole list.
+// Both start from a freshly filled window on every invocation, built in an untimed setup: the merge
+// changes the window, and filling it is not part of applying a delivery.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MessageMergeBenchmark {
+
+    @Param({"50", "200"})
+    public int windowSize;
+
+    @Param({"1", "50"})
+    public int snapshotSize;
+
+    private List<ChatMessage> window;
+    private List<ChatMessage> snapshot;
+    private MessageLog messageLog; // Refilled before every invocation
+    private List<ChatMessage> messageList; // The baseline's window, refilled before every invocation
+
+    @Setup
+    public void setUp() {
+        List<ChatMessage> conversation = Messages.conversation(windowSize + snapshotSize, 42);
+        window = new ArrayList<>(conversation.subList(0, windowSize));
+        // A delivery holds the new messages plus a few the window already has (e.g. rendered from disk)
+        // and an edit of a message in the window
+        snapshot = new ArrayList<>(conversation.subList(windowSize - Math.min(5, windowSize), conversation.size()));
+        ChatMessage edited = edit(window.get(windowSize / 2));
+        snapshot.add(0, edited);
+    }
+
+    @Setup(Level.Invocation)
+    public void fillWindow() {
+        messageLog = new MessageLog();
+        messageLog.insertAll(window, (positionStart, itemCount) -> { });
+        messageList = new ArrayList<>(window);
+    }
+
+    @Benchmark
+    public MessageLog mergeIntoMessageLog() {
+        MessageLog chatMessages = messageLog;
+
+        // messagesListener: skip what is shown already, including edits already applied
+        List<ChatMessage> newMessages = new ArrayList<>();
+        for (ChatMessage chatMessage : snapshot) {
+            int position = chatMessages.positionOf(chatMessage);
+            if (position >= 0 && !chatMessage.deleted && chatMessages.getEditedAt(position) >= chatMessage.editedAt) {
+                continue;
+            }
+            newMessages.add(chatMessage);
+        }
+
+        // applyIncomingMessages: edits in place, then the new messages that belong in the window
+        List<ChatMessage> windowMessages = new ArrayList<>();
+        for (ChatMessage chatMessage : newMessages) {
+            if (chatMessage.deleted) {
+                chatMessages.remove(chatMessage, (positionStart, itemCount) -> { });
+            } else if ((chatMessage.editedAt == 0 || chatMessages.update(chatMessage) < 0)
+                    && !chatMessages.isBeforeFirst(chatMessage)) {
+                windowMessages.add(chatMessage);
+            }
+        }
+        chatMessages.insertAll(windowMessages, (positionStart, itemCount) -> { });
+        return chatMessages;
+    }
+
+    @Benchmark
+    public List<ChatMessage> appendAndSort() {
+        List<ChatMessage> chatMessages = messageList;
+        Set<String> ids = new HashSet<>();
+        for (ChatMessage chatMessage : chatMessages) {
+            ids.add(chatMessage.id);
+        }
+
+        for (ChatMessage chatMessage : snapshot) {
+            if (ids.add(chatMessage.id)) {
+                chatMessages.add(chatMessage);
+            }
+        }
+        Collections.sort(chatMessages, (first, second) -> Long.compare(first.timestamp, second.timestamp));
+        return chatMessages;
+    }
+
+    private static ChatMessage edit(ChatMessage original) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.id = original.id;
+        chatMessage.conversationId = original.conversationId;
+        chatMessage.senderId = original.senderId;
+        chatMessage.receiverId = original.receiverId;
+        chatMessage.message = original.message + " (edited)";
+        chatMessage.timestamp = original.timestamp;
+        chatMessage.editedAt = original.timestamp + 60 * 1000;
+        return chatMessage;
+    }
+}
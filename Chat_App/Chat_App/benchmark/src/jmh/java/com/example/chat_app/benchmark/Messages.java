@@ -0,0 +1,38 @@
+package com.example.chat_app.benchmark;
+
+import com.example.chat_app.models.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Deterministic test data: the same seed gives the same conversation on every run
+final class Messages {
+
+    static final String USER_A = "userA";
+    static final String USER_B = "userB";
+    static final long START = 1_690_000_000_000L;
+
+    private Messages() {
+    }
+
+    // count messages in time order, a few seconds to a few hours apart, alternating senders at random
+    static List<ChatMessage> conversation(int count, long seed) {
+        Random random = new Random(seed);
+        List<ChatMessage> messages = new ArrayList<>(count);
+        long timestamp = START;
+        for (int i = 0; i < count; i++) {
+            timestamp += 1000 + random.nextInt(3 * 60 * 60 * 1000);
+            boolean fromA = random.nextBoolean();
+            ChatMessage chatMessage = new ChatMessage();
+            chatMessage.id = String.format("%020d", i);
+            chatMessage.conversationId = ChatMessage.getConversationId(USER_A, USER_B);
+            chatMessage.senderId = fromA ? USER_A : USER_B;
+            chatMessage.receiverId = fromA ? USER_B : USER_A;
+            chatMessage.message = "message " + i;
+            chatMessage.timestamp = timestamp;
+            messages.add(chatMessage);
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.chat_app.benchmark;
+
+import com.example.chat_app.models.User;
+import com.example.chat_app.utilities.UserSearchIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+// One keystroke in the users search box: the index lookup, and the scan over every user it replaces.
+// applyDelta is a directory delta of one changed profile arriving while the index is built.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UserSearchBenchmark {
+
+    private static final int LIMIT = 100; // UsersActivity.MAX_SEARCH_RESULTS
+
+    @Param({"1000", "100000"})
+    public int userCount;
+
+    @Param({"m", "sara co", "tana"})
+    public String query;
+
+    private List<User> users;
+    private UserSearchIndex index;
+    private int nextChange;
+
+    @Setup
+    public void setUp() {
+        users = Users.directory(userCount, 42);
+        index = new UserSearchIndex();
+        index.putAll(users);
+    }
+
+    @Benchmark
+    public List<User> searchIndex() {
+        return index.search(query, LIMIT);
+    }
+
+    @Benchmark
+    public List<User> scanAll() {
+        String needle = query.toLowerCase(Locale.ROOT);
+        List<User> results = new ArrayList<>();
+        for (User user : users) {
+            if (user.name.toLowerCase(Locale.ROOT).contains(needle) || user.email.contains(needle)) {
+                results.add(user);
+                if (results.size() == LIMIT) {
+                    break;
+                }
+            }
+        }
+        return results;
+    }
+
+    @Benchmark
+    public UserSearchIndex applyDelta() {
+        User changed = new User();
+        User original = users.get(nextChange++ % users.size());
+        changed.id = original.id;
+        changed.name = original.name + " " + nextChange;
+        changed.email = original.email;
+        index.put(changed);
+        return index;
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.chat_app.benchmark;
+
+import com.example.chat_app.models.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Deterministic user directory: the same seed gives the same names on every run
+final class Users {
+
+    private static final String[] FIRST_NAMES = {"Anna", "Ben", "Chloé", "David", "Eitan", "Fatima", "George",
+            "Hana", "Ivan", "Julia", "Karim", "Lea", "Maya", "Noam", "Omar", "Priya", "Rafael", "Sara", "Tom", "Yael"};
+    private static final String[] LAST_NAMES = {"Abbott", "Cohen", "Díaz", "Evans", "Friedman", "Garcia", "Haddad",
+            "Ito", "Jensen", "Katz", "Levi", "Müller", "Nguyen", "Okafor", "Peretz", "Rossi", "Smith", "Tanaka"};
+
+    private Users() {
+    }
+
+    static List<User> directory(int count, long seed) {
+        Random random = new Random(seed);
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            User user = new User();
+            user.id = String.format("user%07d", i);
+            user.name = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " "
+                    + LAST_NAMES[random.nextInt(LAST_NAMES.length)] + " " + Integer.toString(i, 36);
+            user.email = user.name.toLowerCase().replace(' ', '.') + "@example.com";
+            users.add(user);
+        }
+        return users;
+    }
+}
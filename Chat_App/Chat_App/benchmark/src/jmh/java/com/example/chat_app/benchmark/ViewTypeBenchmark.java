@@ -0,0 +1,45 @@
+package com.example.chat_app.benchmark;
+
+import com.example.chat_app.models.ChatMessage;
+import com.example.chat_app.utilities.MessageLog;
+import com.example.chat_app.utilities.MessageViewTypes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// ChatAdapter.getItemViewType over every row of a large conversation
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ViewTypeBenchmark {
+
+    @Param({"1000", "100000"})
+    public int messageCount;
+
+    private MessageLog chatMessages;
+
+    @Setup
+    public void setUp() {
+        chatMessages = new MessageLog();
+        chatMessages.insertAll(Messages.conversation(messageCount, 42), (positionStart, itemCount) -> { });
+    }
+
+    @Benchmark
+    public int resolveAll() {
+        int sent = 0;
+        for (int position = 0; position < chatMessages.size(); position++) {
+            if (MessageViewTypes.resolve(chatMessages.getSenderId(position), Messages.USER_A) == MessageViewTypes.VIEW_TYPE_SENT) {
+                sent++;
+            }
+        }
+        return sent;
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.chat_app.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Monotonic event count. LongAdder spreads contended increments over cells instead of one CAS loop.
+public class Counter {
+
+    private final String name;
+    private final LongAdder count = new LongAdder();
+
+    Counter(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void increment() {
+        count.increment();
+    }
+
+    public void add(long delta) {
+        count.add(delta);
+    }
+
+    public long get() {
+        return count.sum();
+    }
+}
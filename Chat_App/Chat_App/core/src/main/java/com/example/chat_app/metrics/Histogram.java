@@ -0,0 +1,75 @@
+package com.example.chat_app.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Latency distribution in microseconds with fixed power-of-two buckets:
+// bucket 0 holds 0 us, bucket i holds [2^(i-1), 2^i) us, the last one everything above ~18 minutes.
+// Recording is one array increment plus a sum and a max, with no locks and no allocation,
+// so it can stay enabled in release builds. Percentiles are bucket upper bounds, i.e. at most 2x off.
+public class Histogram {
+
+    private static final int BUCKET_COUNT = 32;
+
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLongArray totals = new AtomicLongArray(2); // 0: sum, 1: max
+
+    Histogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void record(long micros) {
+        if (micros < 0) {
+            micros = 0; // Clock skew between devices, e.g. for delivery latency
+        }
+        int bucket = Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets.incrementAndGet(bucket);
+        totals.addAndGet(0, micros);
+        long max;
+        while (micros > (max = totals.get(1)) && !totals.compareAndSet(1, max, micros)) {
+            // Another thread raised the max in the meantime, check again
+        }
+    }
+
+    // Duration since a System.nanoTime() taken at the start of the measured work
+    public void recordSince(long startNanos) {
+        record((System.nanoTime() - startNanos) / 1000);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += buckets.get(i);
+        }
+        return count;
+    }
+
+    public long getSum() {
+        return totals.get(0);
+    }
+
+    public long getMax() {
+        return totals.get(1);
+    }
+
+    // Upper bound of the bucket holding the given quantile (0..1), in microseconds
+    public long getPercentile(double quantile) {
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min((1L << i) - 1, getMax());
+            }
+        }
+        return getMax();
+    }
+}
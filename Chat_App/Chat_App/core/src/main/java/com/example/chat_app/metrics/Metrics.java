@@ -0,0 +1,69 @@
+package com.example.chat_app.metrics;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Process-wide registry of counters and histograms.
+// Look a metric up once (e.g. into a static final field) and record on it directly;
+// only the lookup touches the map. Names are dotted paths such as "chat.bind".
+public class Metrics {
+
+    // Instrumented paths, kept in one place so the debug screen and the dumps use the same names
+    public static final String CHAT_SNAPSHOT_DELIVERY = "chat.snapshot.delivery";
+    public static final String CHAT_SNAPSHOT_APPLY = "chat.snapshot.apply";
+    public static final String CHAT_SEND_ECHO = "chat.send.echo";
+    public static final String CHAT_SEND_ACK = "chat.send.ack";
+    public static final String CHAT_BIND = "chat.bind";
+    public static final String USERS_BIND = "users.bind";
+    public static final String USERS_FETCH = "users.fetch";
+    public static final String AVATAR_DECODE = "avatar.decode";
+    public static final String AVATAR_FETCH = "avatar.fetch";
+    public static final String CHAT_MESSAGES_SENT = "chat.messages.sent";
+    public static final String CHAT_MESSAGES_RECEIVED = "chat.messages.received";
+
+    private static final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    public static Counter counter(String name) {
+        return counters.computeIfAbsent(name, Counter::new);
+    }
+
+    public static Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, Histogram::new);
+    }
+
+    // One line per metric, sorted by name:
+    //   <name> <count>                      (counters)
+    //   <name> n=<count> p50= p90= p99= max= mean=   (histograms, microseconds)
+    public static void dump(Appendable out) throws IOException {
+        for (Counter counter : new TreeMap<>(counters).values()) {
+            out.append(counter.getName()).append(' ').append(String.valueOf(counter.get())).append('\n');
+        }
+        for (Histogram histogram : new TreeMap<>(histograms).values()) {
+            long count = histogram.getCount();
+            out.append(histogram.getName())
+                    .append(" n=").append(String.valueOf(count))
+                    .append(" p50=").append(String.valueOf(histogram.getPercentile(0.5)))
+                    .append(" p90=").append(String.valueOf(histogram.getPercentile(0.9)))
+                    .append(" p99=").append(String.valueOf(histogram.getPercentile(0.99)))
+                    .append(" max=").append(String.valueOf(histogram.getMax()))
+                    .append(" mean=").append(String.valueOf(count == 0 ? 0 : histogram.getSum() / count))
+                    .append('\n');
+        }
+    }
+
+    public static String dump() {
+        StringBuilder builder = new StringBuilder();
+        try {
+            dump(builder);
+        } catch (IOException e) {
+            // StringBuilder does not throw
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.chat_app.models;
+
+public class ChatMessage {
+    public String id, conversationId, senderId, receiverId, message;
+    public long timestamp; // Epoch millis, formatted only when the message is bound to a view
+    public boolean pending; // Written locally, not yet confirmed by Firestore
+    public long editedAt; // Epoch millis of the last edit, 0 when never edited
+    public boolean deleted; // Tombstone: the sender deleted the message, only id and timestamp remain
+
+    // Both participants get the same key no matter who sent the message
+    public static String getConversationId(String userId1, String userId2) {
+        return userId1.compareTo(userId2) < 0 ? userId1 + "_" + userId2 : userId2 + "_" + userId1;
+    }
+}
+ // בנאי דפולטיבי
@@ -0,0 +1,8 @@
+package com.example.chat_app.models;
+
+// One entry of the signed-in user's recent-conversations index (users/{id}/conversations/{peerId})
+public class Conversation {
+    public String peerId, peerName, peerImageHash, lastMessage;
+    public long timestamp; // Epoch millis of the last message
+    public long unreadCount;
+}
@@ -0,0 +1,11 @@
+package com.example.chat_app.models;
+
+// Only small fields: the avatar is referenced by hash, never inlined.
+// Between activities a user travels as its id plus a few strings (see UserRegistry.putExtras).
+public class User {
+    public String name, imageHash, email, token,id;
+    public long updatedAt; // Epoch millis of the last profile change, 0 for profiles older than the field
+
+    public User() {
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.chat_app.repository;
+
+// Result of a repository call, or one delivery of a realtime listener.
+// Exactly one of result and error is meaningful: error is null on success.
+public interface Callback<T> {
+    void onResult(T result, Exception error);
+}
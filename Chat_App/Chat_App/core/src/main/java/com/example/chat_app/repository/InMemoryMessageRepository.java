@@ -0,0 +1,303 @@
+package com.example.chat_app.repository;
+
+import com.example.chat_app.models.ChatMessage;
+import com.example.chat_app.models.Conversation;
+import com.example.chat_app.models.User;
+import com.example.chat_app.utilities.MessageLog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+// MessageRepository that lives entirely in this process: no network, no disk.
+// Listeners get the same deliveries as from Firestore (first the initial range, then one delta per
+// send), posted to the callback executor, so the listener path can be driven and measured on a plain JVM.
+// Writes are acknowledged immediately, so a delivered message is never pending.
+public class InMemoryMessageRepository implements MessageRepository {
+
+    private final Executor callbackExecutor;
+    private final AtomicLong nextId = new AtomicLong();
+    // Guarded by this
+    private final Map<String, MessageLog> conversations = new HashMap<>();
+    private final Map<String, List<Subscription<List<ChatMessage>>>> messageListeners = new HashMap<>();
+    private final Map<String, Map<String, Conversation>> indexes = new HashMap<>(); // userId -> peerId -> entry
+    private final Map<String, List<Subscription<List<Conversation>>>> conversationListeners = new HashMap<>();
+
+    // Callbacks are posted to callbackExecutor in the order they happen; pass a single thread
+    // (or a direct executor) to keep that order
+    public InMemoryMessageRepository(Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    @Override
+    public String newMessageId() {
+        // Zero padded, so ids of messages with the same timestamp sort in creation order
+        return String.format("m%019d", nextId.incrementAndGet());
+    }
+
+    @Override
+    public synchronized Registration listenMessages(String conversationId, long since, int limit,
+                                                    Callback<List<ChatMessage>> listener) {
+        MessageLog log = conversation(conversationId);
+        int from = since == 0 ? Math.max(0, log.size() - limit) : log.lowerBound(since, "");
+        List<ChatMessage> initial = new ArrayList<>();
+        if (since != 0) {
+            // Older messages changed since then; a scan is fine for an in-memory backend
+            for (int position = 0; position < from; position++) {
+                if (log.getEditedAt(position) >= since) {
+                    initial.add(log.get(position));
+                }
+            }
+        }
+        initial.addAll(copyRange(log, from, log.size()));
+
+        Subscription<List<ChatMessage>> subscription = new Subscription<>(listener);
+        listeners(messageListeners, conversationId).add(subscription);
+        deliver(subscription, initial);
+        return () -> {
+            synchronized (InMemoryMessageRepository.this) {
+                subscription.removed = true;
+                listeners(messageListeners, conversationId).remove(subscription);
+            }
+        };
+    }
+
+    @Override
+    public synchronized void getMessagesBefore(String conversationId, ChatMessage before, int limit,
+                                               Callback<List<ChatMessage>> callback) {
+        MessageLog log = conversation(conversationId);
+        int to = log.lowerBound(before.timestamp, before.id);
+        List<ChatMessage> page = copyRange(log, Math.max(0, to - limit), to);
+        Collections.reverse(page);
+        callbackExecutor.execute(() -> callback.onResult(page, null));
+    }
+
+    @Override
+    public synchronized void sendMessages(List<ChatMessage> chatMessages, User sender, Callback<Void> callback) {
+        Map<String, List<ChatMessage>> added = new LinkedHashMap<>();
+        Map<String, ChatMessage> lastMessages = new LinkedHashMap<>();
+        Map<String, Integer> messageCounts = new HashMap<>();
+        for (ChatMessage chatMessage : chatMessages) {
+            ChatMessage stored = copy(chatMessage);
+            stored.pending = false;
+            if (conversation(stored.conversationId).insert(stored) < 0) {
+                continue; // Sent before: the set is idempotent
+            }
+            List<ChatMessage> delta = added.get(stored.conversationId);
+            if (delta == null) {
+                delta = new ArrayList<>();
+                added.put(stored.conversationId, delta);
+            }
+            delta.add(stored);
+            lastMessages.put(stored.conversationId, stored);
+            Integer count = messageCounts.get(stored.conversationId);
+            messageCounts.put(stored.conversationId, count == null ? 1 : count + 1);
+        }
+
+        for (Map.Entry<String, List<ChatMessage>> entry : added.entrySet()) {
+            for (Subscription<List<ChatMessage>> subscription : listeners(messageListeners, entry.getKey())) {
+                deliver(subscription, copyAll(entry.getValue()));
+            }
+        }
+        for (ChatMessage lastMessage : lastMessages.values()) {
+            putIndexEntry(lastMessage.senderId, lastMessage.receiverId, lastMessage, null, 0);
+            putIndexEntry(lastMessage.receiverId, lastMessage.senderId, lastMessage, sender,
+                    messageCounts.get(lastMessage.conversationId));
+        }
+        callbackExecutor.execute(() -> callback.onResult(null, null));
+    }
+
+    @Override
+    public void editMessage(ChatMessage chatMessage, Callback<Void> callback) {
+        update(chatMessage, callback);
+    }
+
+    @Override
+    public void deleteMessage(ChatMessage chatMessage, Callback<Void> callback) {
+        update(chatMessage, callback);
+    }
+
+    // Edits and tombstones replace the stored copy and reach listeners like a send
+    private synchronized void update(ChatMessage chatMessage, Callback<Void> callback) {
+        ChatMessage stored = copy(chatMessage);
+        stored.pending = false;
+        MessageLog log = conversation(stored.conversationId);
+        int position = log.update(stored);
+        if (position < 0) {
+            callbackExecutor.execute(() -> callback.onResult(null, new IllegalArgumentException("No such message")));
+            return;
+        }
+        // The last message of the conversation: both index entries show the new text, like Firestore's
+        if (position == log.size() - 1) {
+            replaceLastMessage(stored.senderId, stored.receiverId, stored);
+            replaceLastMessage(stored.receiverId, stored.senderId, stored);
+        }
+        for (Subscription<List<ChatMessage>> subscription : listeners(messageListeners, stored.conversationId)) {
+            deliver(subscription, Collections.singletonList(copy(stored)));
+        }
+        callbackExecutor.execute(() -> callback.onResult(null, null));
+    }
+
+    @Override
+    public synchronized Registration listenConversations(String userId, int limit, Callback<List<Conversation>> listener) {
+        Subscription<List<Conversation>> subscription = new Subscription<>(listener);
+        subscription.limit = limit;
+        listeners(conversationListeners, userId).add(subscription);
+        deliver(subscription, recentConversations(userId, limit));
+        return () -> {
+            synchronized (InMemoryMessageRepository.this) {
+                subscription.removed = true;
+                listeners(conversationListeners, userId).remove(subscription);
+            }
+        };
+    }
+
+    @Override
+    public synchronized void markRead(String userId, String peerId) {
+        Conversation conversation = index(userId).get(peerId);
+        if (conversation != null && conversation.unreadCount != 0) {
+            conversation.unreadCount = 0;
+            conversationsChanged(userId);
+        }
+    }
+
+    @Override
+    public void backfillConversation(String conversationId, String userId, String peerId, Callback<Void> callback) {
+        // Every message written here already has its conversation id
+        callbackExecutor.execute(() -> callback.onResult(null, null));
+    }
+
+    // Merges like the Firestore index: a null peer keeps the name and avatar already in the entry
+    private void putIndexEntry(String userId, String peerId, ChatMessage lastMessage, User peer, int unreadIncrement) {
+        Conversation conversation = index(userId).get(peerId);
+        if (conversation == null) {
+            conversation = new Conversation();
+            conversation.peerId = peerId;
+            index(userId).put(peerId, conversation);
+        }
+        conversation.lastMessage = lastMessage.message;
+        conversation.timestamp = lastMessage.timestamp;
+        conversation.unreadCount = unreadIncrement > 0 ? conversation.unreadCount + unreadIncrement : 0;
+        if (peer != null) {
+            conversation.peerName = peer.name;
+            conversation.peerImageHash = peer.imageHash;
+        }
+        conversationsChanged(userId);
+    }
+
+    private void replaceLastMessage(String userId, String peerId, ChatMessage lastMessage) {
+        Conversation conversation = index(userId).get(peerId);
+        if (conversation != null) {
+            conversation.lastMessage = lastMessage.message;
+            conversationsChanged(userId);
+        }
+    }
+
+        private void conversationsChanged(String userId) {
+        for (Subscription<List<Conversation>> subscription : listeners(conversationListeners, userId)) {
+            deliver(subscription, recentConversations(userId, subscription.limit));
+        }
+    }
+
+    private List<Conversation> recentConversations(String userId, int limit) {
+        List<Conversation> recent = new ArrayList<>();
+        for (Conversation conversation : index(userId).values()) {
+            recent.add(copy(conversation));
+        }
+        Collections.sort(recent, (a, b) -> Long.compare(b.timestamp, a.timestamp));
+        return recent.size() > limit ? new ArrayList<>(recent.subList(0, limit)) : recent;
+    }
+
+    private <T> void deliver(Subscription<T> subscription, T value) {
+        callbackExecutor.execute(() -> {
+            if (!subscription.removed) {
+                subscription.listener.onResult(value, null);
+            }
+        });
+    }
+
+    private MessageLog conversation(String conversationId) {
+        MessageLog log = conversations.get(conversationId);
+        if (log == null) {
+            log = new MessageLog();
+            conversations.put(conversationId, log);
+        }
+        return log;
+    }
+
+    private Map<String, Conversation> index(String userId) {
+        Map<String, Conversation> index = indexes.get(userId);
+        if (index == null) {
+            index = new HashMap<>();
+            indexes.put(userId, index);
+        }
+        return index;
+    }
+
+    private static <T> List<Subscription<T>> listeners(Map<String, List<Subscription<T>>> listeners, String key) {
+        List<Subscription<T>> list = listeners.get(key);
+        if (list == null) {
+            list = new CopyOnWriteArrayList<>();
+            listeners.put(key, list);
+        }
+        return list;
+    }
+
+    private static List<ChatMessage> copyRange(MessageLog log, int from, int to) {
+        List<ChatMessage> range = new ArrayList<>(to - from);
+        for (int position = from; position < to; position++) {
+            range.add(log.get(position));
+        }
+        return range;
+    }
+
+    // Every listener gets its own objects, like separate Firestore snapshots
+    private static List<ChatMessage> copyAll(List<ChatMessage> chatMessages) {
+        List<ChatMessage> copies = new ArrayList<>(chatMessages.size());
+        for (ChatMessage chatMessage : chatMessages) {
+            copies.add(copy(chatMessage));
+        }
+        return copies;
+    }
+
+    private static ChatMessage copy(ChatMessage chatMessage) {
+        ChatMessage copy = new ChatMessage();
+        copy.id = chatMessage.id;
+        copy.conversationId = chatMessage.conversationId;
+        copy.senderId = chatMessage.senderId;
+        copy.receiverId = chatMessage.receiverId;
+        copy.message = chatMessage.message;
+        copy.timestamp = chatMessage.timestamp;
+        copy.pending = chatMessage.pending;
+        copy.editedAt = chatMessage.editedAt;
+        copy.deleted = chatMessage.deleted;
+        return copy;
+    }
+
+    private static Conversation copy(Conversation conversation) {
+        Conversation copy = new Conversation();
+        copy.peerId = conversation.peerId;
+        copy.peerName = conversation.peerName;
+        copy.peerImageHash = conversation.peerImageHash;
+        copy.lastMessage = conversation.lastMessage;
+        copy.timestamp = conversation.timestamp;
+        copy.unreadCount = conversation.unreadCount;
+        return copy;
+    }
+
+    private static class Subscription<T> {
+        final Callback<T> listener;
+        int limit;
+        volatile boolean removed;
+
+        Subscription(Callback<T> listener) {
+            this.listener = listener;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.chat_app.repository;
+
+import com.example.chat_app.models.User;
+import com.example.chat_app.utilities.ContentHash;
+import com.example.chat_app.utilities.LegacyImages;
+import com.example.chat_app.utilities.PasswordHasher;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// SessionRepository over a map of logins, hashing passwords the same way as the Firestore login index
+public class InMemorySessionRepository implements SessionRepository {
+
+    private final Executor callbackExecutor;
+    private final InMemoryUserRepository userRepository;
+    private final Map<String, Login> logins = new ConcurrentHashMap<>(); // Normalized email -> login
+    // Hashing is deliberately slow, so it never runs on the caller's thread
+    private final ExecutorService hashExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "in-memory-sessions");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public InMemorySessionRepository(Executor callbackExecutor, InMemoryUserRepository userRepository) {
+        this.callbackExecutor = callbackExecutor;
+        this.userRepository = userRepository;
+    }
+
+    @Override
+    public void signIn(String email, String password, Callback<User> callback) {
+        hashExecutor.execute(() -> {
+            Login login = logins.get(normalizeEmail(email));
+            User user = login != null && PasswordHasher.verify(password, login.salt, login.iterations, login.hash)
+                    ? userRepository.get(login.userId) : null;
+            callbackExecutor.execute(() -> callback.onResult(user, null));
+        });
+    }
+
+    @Override
+    public void signUp(User user, String password, byte[] avatar, Callback<User> callback) {
+        hashExecutor.execute(() -> {
+            Login login = new Login();
+            login.userId = UUID.randomUUID().toString();
+            login.salt = PasswordHasher.newSalt();
+            login.iterations = PasswordHasher.ITERATIONS;
+            login.hash = PasswordHasher.hash(password, login.salt, login.iterations);
+            if (logins.putIfAbsent(normalizeEmail(user.email), login) != null) {
+                callbackExecutor.execute(() -> callback.onResult(null, new EmailTakenException()));
+                return;
+            }
+            User created = new User();
+            created.id = login.userId;
+            created.name = user.name;
+            created.email = user.email;
+            created.imageHash = avatar == null ? null : ContentHash.sha256(avatar);
+            userRepository.put(created);
+            callbackExecutor.execute(() -> callback.onResult(created, null));
+        });
+    }
+
+    @Override
+    public void signOut(String userId, Callback<Void> callback) {
+        User user = userRepository.get(userId);
+        if (user != null) {
+            user.token = null;
+        }
+        callbackExecutor.execute(() -> callback.onResult(null, null));
+    }
+
+    @Override
+    public void migrateLegacyImage(String userId, String encodedImage, Callback<String> callback) {
+        hashExecutor.execute(() -> {
+            byte[] bytes;
+            try {
+                bytes = LegacyImages.decode(encodedImage);
+            } catch (IllegalArgumentException exception) {
+                callbackExecutor.execute(() -> callback.onResult(null, exception));
+                return;
+            }
+            String imageHash = ContentHash.sha256(bytes);
+            User user = userRepository.get(userId);
+            if (user != null) {
+                user.imageHash = imageHash;
+                userRepository.put(user);
+            }
+            callbackExecutor.execute(() -> callback.onResult(imageHash, null));
+        });
+    }
+
+    // Same normalization as the Firestore login index
+    private static String normalizeEmail(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static class Login {
+        String userId, salt, hash;
+        int iterations;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.chat_app.repository;
+
+import com.example.chat_app.models.User;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+// UserRepository backed by a map; users come from InMemorySessionRepository.signUp or put()
+public class InMemoryUserRepository implements UserRepository {
+
+    private final Executor callbackExecutor;
+    private final Map<String, User> users = new ConcurrentHashMap<>();
+    private final List<Callback<List<User>>> listeners = new CopyOnWriteArrayList<>();
+
+    public InMemoryUserRepository(Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    // Stamps the profile as changed now and delivers it to the directory listeners
+    public synchronized void put(User user) {
+        user.updatedAt = System.currentTimeMillis();
+        users.put(user.id, user);
+        List<User> changed = Collections.singletonList(user);
+        for (Callback<List<User>> listener : listeners) {
+            callbackExecutor.execute(() -> listener.onResult(changed, null));
+        }
+    }
+
+    public User get(String userId) {
+        return users.get(userId);
+    }
+
+    @Override
+    public synchronized Registration listenUsers(long since, Callback<List<User>> listener) {
+        List<User> initial = new ArrayList<>();
+        for (User user : users.values()) {
+            if (user.updatedAt >= since) {
+                initial.add(user);
+            }
+        }
+        listeners.add(listener);
+        callbackExecutor.execute(() -> listener.onResult(initial, null));
+        return () -> listeners.remove(listener);
+    }
+}
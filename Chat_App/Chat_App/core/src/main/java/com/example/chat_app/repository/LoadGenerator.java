@@ -0,0 +1,70 @@
+package com.example.chat_app.repository;
+
+import com.example.chat_app.models.ChatMessage;
+import com.example.chat_app.models.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Synthetic traffic for one conversation: sends messages through a MessageRepository at a fixed rate,
+// in batches the way the outbox does, alternating between the two participants. Run it against
+// InMemoryMessageRepository to measure what the listener side can ingest without a Firestore project.
+public class LoadGenerator {
+
+    private final MessageRepository repository;
+    private final User first;
+    private final User second;
+    private final String conversationId;
+
+    public LoadGenerator(MessageRepository repository, User first, User second) {
+        this.repository = repository;
+        this.first = first;
+        this.second = second;
+        conversationId = ChatMessage.getConversationId(first.id, second.id);
+    }
+
+    public String getConversationId() {
+        return conversationId;
+    }
+
+    // Sends messagesPerSecond messages in batches of batchSize until durationMillis have passed,
+    // and returns how many were sent. Batches follow a fixed schedule, so a late batch (e.g. after a GC
+    // pause) is followed by the next one right away and the average rate stays on target.
+    public long run(int messagesPerSecond, int batchSize, long durationMillis) {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) * batchSize / messagesPerSecond;
+        long endNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        long nextBatchNanos = System.nanoTime();
+        long sent = 0;
+        long batches = 0;
+        while (nextBatchNanos < endNanos) {
+            long waitNanos = nextBatchNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                LockSupport.parkNanos(waitNanos);
+            }
+            // Whole batches come from one side, like a burst typed on one device
+            User sender = batches++ % 2 == 0 ? first : second;
+            User receiver = sender == first ? second : first;
+            List<ChatMessage> batch = new ArrayList<>(batchSize);
+            for (int i = 0; i < batchSize; i++) {
+                batch.add(newMessage(sender, receiver, sent++));
+            }
+            repository.sendMessages(batch, sender, (unused, error) -> {
+            });
+            nextBatchNanos += intervalNanos;
+        }
+        return sent;
+    }
+
+    private ChatMessage newMessage(User sender, User receiver, long sequence) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.id = repository.newMessageId();
+        chatMessage.conversationId = conversationId;
+        chatMessage.senderId = sender.id;
+        chatMessage.receiverId = receiver.id;
+        chatMessage.message = "Load message " + sequence;
+        chatMessage.timestamp = System.currentTimeMillis();
+        return chatMessage;
+    }
+}
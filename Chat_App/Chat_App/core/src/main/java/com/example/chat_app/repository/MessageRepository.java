@@ -0,0 +1,46 @@
+package com.example.chat_app.repository;
+
+import com.example.chat_app.models.ChatMessage;
+import com.example.chat_app.models.Conversation;
+import com.example.chat_app.models.User;
+
+import java.util.List;
+
+// Messages of one conversation and each user's recent-conversations index.
+// Every callback runs on the implementation's callback thread (the main thread in the app).
+public interface MessageRepository {
+
+    // A fresh message id, generated without a round trip so a message can be shown before it is sent
+    String newMessageId();
+
+    // Realtime: each delivery holds only the messages added or changed since the previous one, ordered by
+    // (timestamp, id). The first delivery holds the messages at or after since plus older ones edited at or
+    // after since, or the newest limit messages when since is 0; it always comes before any other and is never
+    // a partial range from an offline cache, so nothing is delivered until the backend confirmed it.
+    // A delivered message is pending while its write is local only. A changed message is delivered again with the same id and timestamp: an edit
+    // carries editedAt, a delete is a tombstone (deleted, no text).
+    Registration listenMessages(String conversationId, long since, int limit, Callback<List<ChatMessage>> listener);
+
+    // Up to limit messages older than the given one, newest first
+    void getMessagesBefore(String conversationId, ChatMessage before, int limit, Callback<List<ChatMessage>> callback);
+
+    // Writes the messages atomically and updates both participants' conversation index.
+    // Messages keep their ids, so sending the same message again leaves one copy.
+    void sendMessages(List<ChatMessage> chatMessages, User sender, Callback<Void> callback);
+
+    // Writes the sender's edit; the message carries its new text and editedAt.
+    // The conversation index keeps showing the text the message was sent with.
+    void editMessage(ChatMessage chatMessage, Callback<Void> callback);
+
+    // Turns the message into a tombstone; the message is already marked deleted, without text, with editedAt set
+    void deleteMessage(ChatMessage chatMessage, Callback<Void> callback);
+
+    // Realtime: the user's most recent conversations, newest first; every delivery is the full list
+    Registration listenConversations(String userId, int limit, Callback<List<Conversation>> listener);
+
+    void markRead(String userId, String peerId);
+
+    // Gives messages stored before conversation ids existed their conversation id, so the
+    // conversation's listener picks them up. Backends without such messages complete right away.
+    void backfillConversation(String conversationId, String userId, String peerId, Callback<Void> callback);
+}
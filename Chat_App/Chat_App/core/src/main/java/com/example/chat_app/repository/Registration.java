@@ -0,0 +1,6 @@
+package com.example.chat_app.repository;
+
+// Handle of a realtime listener; remove() stops deliveries and may be called more than once
+public interface Registration {
+    void remove();
+}
@@ -0,0 +1,31 @@
+package com.example.chat_app.repository;
+
+import com.example.chat_app.models.User;
+
+// Accounts: creating them, checking credentials and ending a session.
+// Passwords are only ever stored as salted hashes (see PasswordHasher).
+public interface SessionRepository {
+
+    // Delivers the signed-in user, or null when the email and password do not match an account
+    void signIn(String email, String password, Callback<User> callback);
+
+    // user carries name and email; delivers it with its new id and avatar hash.
+    // Fails with EmailTakenException when the email already has an account.
+    void signUp(User user, String password, byte[] avatar, Callback<User> callback);
+
+    // Stops pushes to this device for the user
+    void signOut(String userId, Callback<Void> callback);
+
+    // Moves an avatar still held inline as Base64 (see LegacyImages) into the avatar blobs and points the user
+    // at it; delivers its hash once that is written. Fails, leaving the account as it was, when the image does
+    // not decode or the write does not go through.
+    void migrateLegacyImage(String userId, String encodedImage, Callback<String> callback);
+
+    class EmailTakenException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public EmailTakenException() {
+            super("Email already registered");
+        }
+    }
+}
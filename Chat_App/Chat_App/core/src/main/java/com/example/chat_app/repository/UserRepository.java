@@ -0,0 +1,12 @@
+package com.example.chat_app.repository;
+
+import com.example.chat_app.models.User;
+
+import java.util.List;
+
+public interface UserRepository {
+
+    // Realtime directory, including the signed-in user. The first delivery holds every profile changed at or
+    // after since (every profile when since is 0), each later one the profiles changed since the previous one.
+    Registration listenUsers(long since, Callback<List<User>> listener);
+}
@@ -0,0 +1,27 @@
+package com.example.chat_app.utilities;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// Content addresses, e.g. the document id of an avatar blob
+public class ContentHash {
+
+    private ContentHash() {
+    }
+
+    // Lower-case hex SHA-256 of the bytes
+    public static String sha256(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+                hex.append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is mandatory on every Android version
+            throw new IllegalStateException(e);
+        }
+    }
+}
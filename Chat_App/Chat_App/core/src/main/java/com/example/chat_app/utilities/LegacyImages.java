@@ -0,0 +1,15 @@
+package com.example.chat_app.utilities;
+
+import java.util.Base64;
+
+// Avatars of accounts created before AvatarBlobs were stored inline as Base64 text
+// (android.util.Base64.DEFAULT, i.e. wrapped every 76 characters). The MIME decoder skips the line breaks.
+public class LegacyImages {
+
+    private LegacyImages() {
+    }
+
+    public static byte[] decode(String encodedImage) {
+        return Base64.getMimeDecoder().decode(encodedImage);
+    }
+}
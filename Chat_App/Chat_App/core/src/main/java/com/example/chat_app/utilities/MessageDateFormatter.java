@@ -0,0 +1,69 @@
+package com.example.chat_app.utilities;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+// Formats message timestamps as "MMMM dd, yyyy - hh:mm a" at bind time.
+// The formatters are created once per locale and time zone, and the date half is computed once per calendar day:
+// a screen of messages usually spans one or two days, so most binds only format the time.
+// Not thread safe: meant to be owned by an adapter and used on the main thread.
+public class MessageDateFormatter {
+
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    // Direct-mapped day cache: slot = day & (size - 1), no boxing on lookup
+    private static final int DAY_SLOTS = 16;
+
+    // Bumped by invalidateAll(); every formatter rebuilds once it sees a new value
+    private static volatile int generation;
+
+    private final Date date = new Date();
+    private final long[] cachedDays = new long[DAY_SLOTS];
+    private final String[] cachedDayTexts = new String[DAY_SLOTS];
+    private int formattersGeneration = -1;
+    private Locale locale;
+    private TimeZone timeZone;
+    private SimpleDateFormat dayFormat;
+    private SimpleDateFormat timeFormat;
+
+    public String format(long timestamp) {
+        ensureFormatters();
+        date.setTime(timestamp);
+        long day = Math.floorDiv(timestamp + timeZone.getOffset(timestamp), DAY_MILLIS);
+        int slot = (int) (day & (DAY_SLOTS - 1));
+        String dayText = cachedDayTexts[slot];
+        if (dayText == null || cachedDays[slot] != day) {
+            dayText = dayFormat.format(date);
+            cachedDays[slot] = day;
+            cachedDayTexts[slot] = dayText;
+        }
+        return dayText + " - " + timeFormat.format(date);
+    }
+
+    // Call when the default time zone changed (Android: ACTION_TIMEZONE_CHANGED). Polling TimeZone.getDefault()
+    // instead would allocate on every bind, it returns a copy. Called from one thread (the main thread).
+    public static void invalidateAll() {
+        generation++;
+    }
+
+    // The user can switch language or time zone while the app is running. Locale.getDefault() does not
+    // allocate, so the locale is checked on every call; the time zone through invalidateAll().
+    private void ensureFormatters() {
+        int currentGeneration = generation;
+        Locale currentLocale = Locale.getDefault();
+        if (currentGeneration == formattersGeneration && currentLocale.equals(locale)) {
+            return;
+        }
+        formattersGeneration = currentGeneration;
+        locale = currentLocale;
+        timeZone = TimeZone.getDefault();
+        dayFormat = new SimpleDateFormat("MMMM dd, yyyy", locale);
+        timeFormat = new SimpleDateFormat("hh:mm a", locale);
+        dayFormat.setTimeZone(timeZone);
+        timeFormat.setTimeZone(timeZone);
+        for (int i = 0; i < DAY_SLOTS; i++) {
+            cachedDayTexts[i] = null;
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package com.example.chat_app.utilities;
+
+import com.example.chat_app.models.ChatMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Messages of one conversation kept ordered by epoch timestamp (ties broken by document id).
+// New messages are placed with a binary search instead of re-sorting the whole list,
+// and every insertion is reported as an exact position range for the adapter.
+// A message is held at most once, so the same message arriving from disk, a push and the
+// snapshot listener is shown once.
+//
+// Storage is columnar rather than one ChatMessage per row: sender, receiver and conversation ids
+// are interned into a tiny table and stored as one byte each, timestamps live in a long[], and ids
+// and bodies are UTF-8 bytes in a shared arena. A row costs a few dozen bytes and no objects;
+// strings are only created when a row is bound (getMessage) or materialized (get).
+//
+// The (timestamp, id) sort key doubles as the id index: every change to a message carries both, so an
+// edit or delete finds its row with the same binary search as an insert, and positions never go stale.
+public class MessageLog {
+
+    public interface RangeListener {
+        void onItemRange(int positionStart, int itemCount);
+    }
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int MAX_INTERNED = 256; // Indexes are stored as unsigned bytes
+    private static final int NULL_LENGTH = -1;
+    private static final byte FLAG_PENDING = 1;
+    private static final byte FLAG_DELETED = 2;
+
+    // Interned ids; a conversation has two participants and one conversation id
+    private final List<String> interned = new ArrayList<>();
+
+    private int size;
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private long[] editedAts = new long[INITIAL_CAPACITY];
+    private byte[] senders = new byte[INITIAL_CAPACITY];
+    private byte[] receivers = new byte[INITIAL_CAPACITY];
+    private byte[] conversations = new byte[INITIAL_CAPACITY];
+    private byte[] flags = new byte[INITIAL_CAPACITY];
+    // Each row's id bytes followed by its body bytes, starting at recordOffsets[row]
+    private int[] recordOffsets = new int[INITIAL_CAPACITY];
+    private int[] idLengths = new int[INITIAL_CAPACITY];
+    private int[] bodyLengths = new int[INITIAL_CAPACITY];
+
+    private byte[] arena = new byte[INITIAL_CAPACITY * 64];
+    private int arenaSize;
+    private int liveBytes; // Arena bytes still referenced; the rest is reclaimed by compactArena()
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Column reads used while binding rows; none of these allocate except getMessage and getId
+
+    public long getTimestamp(int position) {
+        return timestamps[position];
+    }
+
+    public String getSenderId(int position) {
+        return interned.get(senders[position] & 0xFF);
+    }
+
+    public String getReceiverId(int position) {
+        return interned.get(receivers[position] & 0xFF);
+    }
+
+    public boolean isPending(int position) {
+        return (flags[position] & FLAG_PENDING) != 0;
+    }
+
+    public void setPending(int position, boolean pending) {
+        flags[position] = (byte) (pending ? flags[position] | FLAG_PENDING : flags[position] & ~FLAG_PENDING);
+    }
+
+    public long getEditedAt(int position) {
+        return editedAts[position];
+    }
+
+    public boolean isDeleted(int position) {
+        return (flags[position] & FLAG_DELETED) != 0;
+    }
+
+    public String getMessage(int position) {
+        int length = bodyLengths[position];
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        return new String(arena, recordOffsets[position] + idLengths[position], length, StandardCharsets.UTF_8);
+    }
+
+    public String getId(int position) {
+        return new String(arena, recordOffsets[position], idLengths[position], StandardCharsets.UTF_8);
+    }
+
+    // Full message object for a row, e.g. as a paging cursor
+    public ChatMessage get(int position) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.id = getId(position);
+        chatMessage.conversationId = interned.get(conversations[position] & 0xFF);
+        chatMessage.senderId = getSenderId(position);
+        chatMessage.receiverId = getReceiverId(position);
+        chatMessage.message = getMessage(position);
+        chatMessage.timestamp = timestamps[position];
+        chatMessage.pending = isPending(position);
+        chatMessage.editedAt = editedAts[position];
+        chatMessage.deleted = isDeleted(position);
+        return chatMessage;
+    }
+
+    public ChatMessage getFirst() {
+        return get(0);
+    }
+
+    public ChatMessage getLast() {
+        return get(size - 1);
+    }
+
+    public boolean contains(ChatMessage chatMessage) {
+        return positionOf(chatMessage) >= 0;
+    }
+
+    // True when the message sorts before everything currently held
+    public boolean isBeforeFirst(ChatMessage chatMessage) {
+        return size > 0 && compare(0, chatMessage.timestamp, encode(chatMessage.id)) > 0;
+    }
+
+    // Position of the message with this id and timestamp, or -1 when it is not in the log
+    public int positionOf(ChatMessage chatMessage) {
+        byte[] id = encode(chatMessage.id);
+        int position = insertionPoint(chatMessage.timestamp, id) - 1;
+        if (position >= 0 && compare(position, chatMessage.timestamp, id) == 0) {
+            return position;
+        }
+        return -1;
+    }
+
+    // Number of messages that sort before the given (timestamp, id), i.e. the position it would take.
+    // An empty id gives the first position at or after the timestamp.
+    public int lowerBound(long timestamp, String id) {
+        byte[] encodedId = encode(id);
+        int position = insertionPoint(timestamp, encodedId);
+        if (position > 0 && compare(position - 1, timestamp, encodedId) == 0) {
+            position--;
+        }
+        return position;
+    }
+
+    // Inserts a single message and returns the position it was placed at, or -1 when it is already held
+    public int insert(ChatMessage chatMessage) {
+        byte[] id = encode(chatMessage.id);
+        int position = insertionPoint(chatMessage.timestamp, id);
+        if (position > 0 && compare(position - 1, chatMessage.timestamp, id) == 0) {
+            return -1;
+        }
+        byte[] body = chatMessage.message == null ? null : encode(chatMessage.message);
+
+        ensureCapacity(size + 1);
+        shiftRows(position, position + 1, size - position);
+        size++;
+
+        timestamps[position] = chatMessage.timestamp;
+        editedAts[position] = chatMessage.editedAt;
+        senders[position] = intern(chatMessage.senderId);
+        receivers[position] = intern(chatMessage.receiverId);
+        conversations[position] = intern(chatMessage.conversationId);
+        flags[position] = (byte) ((chatMessage.pending ? FLAG_PENDING : 0) | (chatMessage.deleted ? FLAG_DELETED : 0));
+        idLengths[position] = id.length;
+        bodyLengths[position] = body == null ? NULL_LENGTH : body.length;
+        recordOffsets[position] = append(id, body);
+        return position;
+    }
+
+    // Applies an edit or a tombstone to the held copy of the message and returns its position,
+    // or -1 when the message is not held. Only the body, edit time and deleted flag change.
+    public int update(ChatMessage chatMessage) {
+        int position = positionOf(chatMessage);
+        if (position < 0) {
+            return -1;
+        }
+        byte[] id = encode(chatMessage.id);
+        byte[] body = chatMessage.message == null ? null : encode(chatMessage.message);
+        liveBytes -= recordLength(position);
+        editedAts[position] = chatMessage.editedAt;
+        flags[position] = (byte) (chatMessage.deleted ? flags[position] | FLAG_DELETED : flags[position] & ~FLAG_DELETED);
+        bodyLengths[position] = body == null ? NULL_LENGTH : body.length;
+        recordOffsets[position] = append(id, body);
+        compactIfSparse();
+        return position;
+    }
+
+    // Removes the message if it is held and reports its position; returns that position or -1
+    public int remove(ChatMessage chatMessage, RangeListener rangeListener) {
+        int position = positionOf(chatMessage);
+        if (position >= 0) {
+            removeRange(position, position + 1, rangeListener);
+        }
+        return position;
+    }
+
+    // Inserts a batch and reports each contiguous run once, in the order the adapter must apply them
+    public void insertAll(List<ChatMessage> chatMessages, RangeListener rangeListener) {
+        int runStart = -1;
+        int runLength = 0;
+        for (ChatMessage chatMessage : chatMessages) {
+            int position = insert(chatMessage);
+            if (position < 0) {
+                continue;
+            }
+            if (runLength > 0 && position == runStart + runLength) {
+                runLength++;
+            } else {
+                if (runLength > 0) {
+                    rangeListener.onItemRange(runStart, runLength);
+                }
+                runStart = position;
+                runLength = 1;
+            }
+        }
+        if (runLength > 0) {
+            rangeListener.onItemRange(runStart, runLength);
+        }
+    }
+
+    // Drops the oldest messages, e.g. when the window has moved far away from them
+    public void removeFirst(int count, RangeListener rangeListener) {
+        removeRange(0, Math.min(count, size), rangeListener);
+    }
+
+    // Drops the newest messages, e.g. while the user is reading far back in the history
+    public void removeLast(int count, RangeListener rangeListener) {
+        removeRange(size - Math.min(count, size), size, rangeListener);
+    }
+
+    private void removeRange(int from, int to, RangeListener rangeListener) {
+        if (from == to) {
+            return;
+        }
+        for (int row = from; row < to; row++) {
+            liveBytes -= recordLength(row);
+        }
+        shiftRows(to, from, size - to);
+        size -= to - from;
+        compactIfSparse();
+        rangeListener.onItemRange(from, to - from);
+    }
+
+    // Removed and replaced records stay in the arena until they make up more than half of it
+    private void compactIfSparse() {
+        if (arenaSize > 2 * liveBytes + INITIAL_CAPACITY * 64) {
+            compactArena();
+        }
+    }
+
+    // First position that sorts after the given message
+    private int insertionPoint(long timestamp, byte[] id) {
+        // Fast path: new messages almost always belong at the end
+        if (size == 0 || compare(size - 1, timestamp, id) <= 0) {
+            return size;
+        }
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(mid, timestamp, id) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Same order as the local store and the Firestore page queries: timestamp, then document id.
+    // Ids are compared as UTF-8 bytes, which is SQLite's BINARY order.
+    private int compare(int row, long timestamp, byte[] id) {
+        int byTime = Long.compare(timestamps[row], timestamp);
+        if (byTime != 0) {
+            return byTime;
+        }
+        int offset = recordOffsets[row];
+        int length = idLengths[row];
+        int common = Math.min(length, id.length);
+        for (int i = 0; i < common; i++) {
+            int byByte = (arena[offset + i] & 0xFF) - (id[i] & 0xFF);
+            if (byByte != 0) {
+                return byByte;
+            }
+        }
+        return length - id.length;
+    }
+
+    private byte intern(String value) {
+        int index = interned.indexOf(value);
+        if (index < 0) {
+            if (interned.size() == MAX_INTERNED) {
+                throw new IllegalStateException("A message log holds one conversation");
+            }
+            interned.add(value);
+            index = interned.size() - 1;
+        }
+        return (byte) index;
+    }
+
+    private int append(byte[] id, byte[] body) {
+        int length = id.length + (body == null ? 0 : body.length);
+        if (arenaSize + length > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + length));
+        }
+        int offset = arenaSize;
+        System.arraycopy(id, 0, arena, offset, id.length);
+        if (body != null) {
+            System.arraycopy(body, 0, arena, offset + id.length, body.length);
+        }
+        arenaSize += length;
+        liveBytes += length;
+        return offset;
+    }
+
+    private int recordLength(int row) {
+        return idLengths[row] + Math.max(0, bodyLengths[row]);
+    }
+
+    // Copies the live records into a fresh arena in row order
+    private void compactArena() {
+        byte[] compacted = new byte[Math.max(INITIAL_CAPACITY * 64, liveBytes * 2)];
+        int offset = 0;
+        for (int row = 0; row < size; row++) {
+            int length = recordLength(row);
+            System.arraycopy(arena, recordOffsets[row], compacted, offset, length);
+            recordOffsets[row] = offset;
+            offset += length;
+        }
+        arena = compacted;
+        arenaSize = offset;
+    }
+
+    private void shiftRows(int from, int to, int count) {
+        System.arraycopy(timestamps, from, timestamps, to, count);
+        System.arraycopy(editedAts, from, editedAts, to, count);
+        System.arraycopy(senders, from, senders, to, count);
+        System.arraycopy(receivers, from, receivers, to, count);
+        System.arraycopy(conversations, from, conversations, to, count);
+        System.arraycopy(flags, from, flags, to, count);
+        System.arraycopy(recordOffsets, from, recordOffsets, to, count);
+        System.arraycopy(idLengths, from, idLengths, to, count);
+        System.arraycopy(bodyLengths, from, bodyLengths, to, count);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= timestamps.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, timestamps.length * 2);
+        timestamps = Arrays.copyOf(timestamps, newCapacity);
+        editedAts = Arrays.copyOf(editedAts, newCapacity);
+        senders = Arrays.copyOf(senders, newCapacity);
+        receivers = Arrays.copyOf(receivers, newCapacity);
+        conversations = Arrays.copyOf(conversations, newCapacity);
+        flags = Arrays.copyOf(flags, newCapacity);
+        recordOffsets = Arrays.copyOf(recordOffsets, newCapacity);
+        idLengths = Arrays.copyOf(idLengths, newCapacity);
+        bodyLengths = Arrays.copyOf(bodyLengths, newCapacity);
+    }
+
+    private static byte[] encode(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
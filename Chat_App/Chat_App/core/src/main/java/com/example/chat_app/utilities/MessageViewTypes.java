@@ -0,0 +1,24 @@
+package com.example.chat_app.utilities;
+
+import com.example.chat_app.models.ChatMessage;
+
+// Decides how a message row is drawn: on our side (sent) or the other side (received).
+// Kept free of Android types so the same rule is used by ChatAdapter and the benchmarks.
+public class MessageViewTypes {
+
+    public static final int VIEW_TYPE_SENT = 1;
+    public static final int VIEW_TYPE_RECEIVED = 2;
+
+    private MessageViewTypes() {
+    }
+
+    public static int resolve(ChatMessage chatMessage, String currentUserId) {
+        return resolve(chatMessage.senderId, currentUserId);
+    }
+
+    // Compares the ids by value; senderId is interned by MessageLog, so equals() usually returns on its
+    // identity check before looking at the characters
+    public static int resolve(String senderId, String currentUserId) {
+        return currentUserId.equals(senderId) ? VIEW_TYPE_SENT : VIEW_TYPE_RECEIVED;
+    }
+}
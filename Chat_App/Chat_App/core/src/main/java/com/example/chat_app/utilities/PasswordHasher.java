@@ -0,0 +1,51 @@
+package com.example.chat_app.utilities;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Base64;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+// Salted PBKDF2 password hashes for the login index.
+// Deliberately slow (tens to hundreds of milliseconds on a phone), so always call it off the main thread.
+// The iteration count is stored next to each hash, so it can be raised later without breaking old logins.
+public class PasswordHasher {
+
+    public static final int ITERATIONS = 100_000;
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private static final SecureRandom random = new SecureRandom();
+
+    private PasswordHasher() {
+    }
+
+    public static String newSalt() {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        return Base64.getEncoder().encodeToString(salt);
+    }
+
+    public static String hash(String password, String salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), Base64.getDecoder().decode(salt), iterations, HASH_BITS);
+        try {
+            byte[] hash = SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+            // PBKDF2WithHmacSHA256 exists on every Android version we support (API 26+)
+            throw new IllegalStateException(e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    // Constant-time comparison, so the time taken does not reveal how much of the hash matched
+    public static boolean verify(String password, String salt, int iterations, String expectedHash) {
+        byte[] actual = hash(password, salt, iterations).getBytes();
+        return MessageDigest.isEqual(actual, expectedHash.getBytes());
+    }
+}
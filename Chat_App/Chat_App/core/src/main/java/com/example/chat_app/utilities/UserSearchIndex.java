@@ -0,0 +1,371 @@
+package com.example.chat_app.utilities;
+
+import com.example.chat_app.models.User;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+// Prefix index over the user directory for search-as-you-type.
+// Each user is indexed under a few normalized terms (lower case, accents and punctuation removed), kept in
+// sorted arrays, one per rank: the full name, each word of the name, the email. A query is one binary
+// search per rank followed by a scan of the matching range, stopped as soon as enough results are found, so
+// a keystroke costs O(log n + limit) whatever the directory size.
+// A small delta is applied term by term (binary search, then one array shift); a large one, such as the
+// first load, is sorted on its own and merged in with a single pass.
+// Not thread-safe; used from the main thread like the directory it mirrors.
+public class UserSearchIndex {
+
+    private static final int RANK_NAME = 0; // The query starts the name: the best match
+    private static final int RANK_WORD = 1; // The query starts any word, e.g. the last name
+    private static final int RANK_EMAIL = 2;
+    private static final int RANK_COUNT = 3;
+
+    // Above this many changed users a sort and merge beats shifting the arrays once per term
+    private static final int MERGE_THRESHOLD = 32;
+
+    private interface TermVisitor {
+        void visit(int rank, String term);
+    }
+
+    private final Terms[] ranks = {new Terms(), new Terms(), new Terms()};
+    // Users by row; terms reference rows, so a user is stored once however many terms it has
+    private User[] users = new User[64];
+    private String[] names = new String[64]; // Normalized names by row, for multi-word queries
+    private String[] emails = new String[64];
+    private final Map<String, Integer> rows = new HashMap<>();
+    private final List<Integer> freeRows = new ArrayList<>();
+    private int rowCount;
+
+    public int size() {
+        return rows.size();
+    }
+
+    public void put(User user) {
+        putAll(Collections.singletonList(user));
+    }
+
+    // Adds new users and re-indexes changed ones; users whose name and email did not change only have
+    // their row replaced (e.g. a new avatar), without touching the terms
+    public void putAll(Collection<User> changedUsers) {
+        boolean merge = changedUsers.size() > MERGE_THRESHOLD;
+        BitSet staleRows = new BitSet();
+        Terms[] added = new Terms[RANK_COUNT];
+        for (int rank = 0; rank < RANK_COUNT; rank++) {
+            added[rank] = new Terms();
+        }
+        for (User user : changedUsers) {
+            Integer existing = rows.get(user.id);
+            if (existing != null) {
+                int row = existing;
+                if (Objects.equals(users[row].name, user.name) && Objects.equals(users[row].email, user.email)) {
+                    users[row] = user;
+                    continue;
+                }
+                if (merge) {
+                    staleRows.set(row);
+                } else {
+                    forEachTerm(names[row], emails[row], (rank, term) -> ranks[rank].remove(term, row));
+                    freeRow(row);
+                }
+            }
+            int row = allocateRow();
+            users[row] = user;
+            names[row] = normalize(user.name);
+            emails[row] = normalize(user.email);
+            rows.put(user.id, row);
+            forEachTerm(names[row], emails[row], (rank, term) -> {
+                if (merge) {
+                    added[rank].add(term, row);
+                } else {
+                    ranks[rank].insert(term, row);
+                }
+            });
+        }
+        if (!merge) {
+            return;
+        }
+        for (int rank = 0; rank < RANK_COUNT; rank++) {
+            if (!staleRows.isEmpty()) {
+                ranks[rank].removeRows(staleRows);
+                added[rank].removeRows(staleRows); // A user changed twice in the same batch
+            }
+            added[rank].sort();
+            ranks[rank].merge(added[rank]);
+        }
+        // Old rows are reused once no term points at them any more
+        for (int row = staleRows.nextSetBit(0); row >= 0; row = staleRows.nextSetBit(row + 1)) {
+            freeRow(row);
+        }
+    }
+
+    // The whole directory by normalized name, users without a name last; the index already holds this
+    // order, so listing it costs no sort
+    public List<User> inNameOrder() {
+        Terms terms = ranks[RANK_NAME];
+        List<User> ordered = new ArrayList<>(rows.size());
+        for (int i = 0; i < terms.size; i++) {
+            ordered.add(users[terms.rows[i]]);
+        }
+        for (int row = 0; row < rowCount; row++) {
+            if (users[row] != null && names[row].isEmpty()) {
+                ordered.add(users[row]);
+            }
+        }
+        return ordered;
+    }
+
+    // Up to limit users matching the query, best ranked first: name prefix, then word prefix, then email
+    // prefix, alphabetical within a rank. Every word of the query must start a word of the user's name
+    // (or the query must start the email). An empty query matches nobody.
+    public List<User> search(String query, int limit) {
+        String prefix = normalize(query);
+        List<User> results = new ArrayList<>();
+        if (prefix.isEmpty()) {
+            return results;
+        }
+        String[] queryWords = prefix.split(" ");
+        Set<Integer> seen = new HashSet<>();
+        for (int rank = 0; rank < RANK_COUNT && results.size() < limit; rank++) {
+            Terms terms = ranks[rank];
+            // A query of several words is matched word by word, in any order ("smith jo" finds "John Smith"):
+            // the scan runs over the smallest range of any query word and checks the other words per candidate.
+            // Every word of a name is a term here, the first one included, so no candidate is missed.
+            boolean checkWords = rank == RANK_WORD && queryWords.length > 1;
+            String scanPrefix = checkWords ? terms.narrowest(queryWords) : prefix;
+            for (int i = terms.lowerBound(scanPrefix, -1); i < terms.size && terms.keys[i].startsWith(scanPrefix)
+                    && results.size() < limit; i++) {
+                int row = terms.rows[i];
+                if (checkWords && !matchesAllWords(names[row], queryWords)) {
+                    continue;
+                }
+                if (seen.add(row)) {
+                    results.add(users[row]);
+                }
+            }
+        }
+        return results;
+    }
+
+    // Lower case, accents removed, anything but letters, digits, '@' and '.' turned into single spaces.
+    // Runs for every user on a full load, so it is a single pass without regular expressions.
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                // Split accented letters into letter and mark, the marks are dropped below
+                text = Normalizer.normalize(text, Normalizer.Form.NFD);
+                break;
+            }
+        }
+        StringBuilder normalized = new StringBuilder(text.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c) || c == '@' || c == '.') {
+                if (pendingSpace && normalized.length() > 0) {
+                    normalized.append(' ');
+                }
+                pendingSpace = false;
+                normalized.append(Character.toLowerCase(c));
+            } else {
+                pendingSpace = true;
+            }
+        }
+        return normalized.toString();
+    }
+
+    private static void forEachTerm(String name, String email, TermVisitor visitor) {
+        if (!name.isEmpty()) {
+            visitor.visit(RANK_NAME, name);
+            for (int start = 0; start >= 0; ) {
+                int end = name.indexOf(' ', start);
+                visitor.visit(RANK_WORD, name.substring(start, end < 0 ? name.length() : end));
+                start = end < 0 ? -1 : end + 1;
+            }
+        }
+        if (!email.isEmpty()) {
+            visitor.visit(RANK_EMAIL, email);
+        }
+    }
+
+    // True when every query word starts a word of the name
+    private static boolean matchesAllWords(String name, String[] queryWords) {
+        for (String queryWord : queryWords) {
+            boolean found = name.startsWith(queryWord);
+            for (int at = name.indexOf(' '); !found && at >= 0; at = name.indexOf(' ', at + 1)) {
+                found = name.startsWith(queryWord, at + 1);
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int allocateRow() {
+        if (!freeRows.isEmpty()) {
+            return freeRows.remove(freeRows.size() - 1);
+        }
+        if (rowCount == users.length) {
+            users = Arrays.copyOf(users, users.length * 2);
+            names = Arrays.copyOf(names, names.length * 2);
+            emails = Arrays.copyOf(emails, emails.length * 2);
+        }
+        return rowCount++;
+    }
+
+    private void freeRow(int row) {
+        users[row] = null;
+        names[row] = null;
+        emails[row] = null;
+        freeRows.add(row);
+    }
+
+    // (term, row) pairs sorted by term, then row
+    private static class Terms {
+        String[] keys = new String[16];
+        int[] rows = new int[16];
+        int size;
+
+        // Appends without keeping the order; used for a batch that is sorted afterwards
+        void add(String key, int row) {
+            ensureCapacity(size + 1);
+            keys[size] = key;
+            rows[size] = row;
+            size++;
+        }
+
+        void insert(String key, int row) {
+            ensureCapacity(size + 1);
+            int position = lowerBound(key, row);
+            System.arraycopy(keys, position, keys, position + 1, size - position);
+            System.arraycopy(rows, position, rows, position + 1, size - position);
+            keys[position] = key;
+            rows[position] = row;
+            size++;
+        }
+
+        void remove(String key, int row) {
+            int position = lowerBound(key, row);
+            if (position == size || rows[position] != row || !keys[position].equals(key)) {
+                return;
+            }
+            System.arraycopy(keys, position + 1, keys, position, size - position - 1);
+            System.arraycopy(rows, position + 1, rows, position, size - position - 1);
+            keys[--size] = null;
+        }
+
+        void sort() {
+            if (size < 2) {
+                return;
+            }
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> compare(keys[a], rows[a], keys[b], rows[b]));
+            String[] sortedKeys = new String[keys.length];
+            int[] sortedRows = new int[rows.length];
+            for (int i = 0; i < size; i++) {
+                sortedKeys[i] = keys[order[i]];
+                sortedRows[i] = rows[order[i]];
+            }
+            keys = sortedKeys;
+            rows = sortedRows;
+        }
+
+        // Merges a sorted batch in, one pass over both
+        void merge(Terms batch) {
+            if (batch.size == 0) {
+                return;
+            }
+            int mergedSize = size + batch.size;
+            String[] mergedKeys = new String[Math.max(16, mergedSize + mergedSize / 4)];
+            int[] mergedRows = new int[mergedKeys.length];
+            int i = 0;
+            int j = 0;
+            for (int k = 0; k < mergedSize; k++) {
+                if (j == batch.size || (i < size && compare(keys[i], rows[i], batch.keys[j], batch.rows[j]) <= 0)) {
+                    mergedKeys[k] = keys[i];
+                    mergedRows[k] = rows[i++];
+                } else {
+                    mergedKeys[k] = batch.keys[j];
+                    mergedRows[k] = batch.rows[j++];
+                }
+            }
+            keys = mergedKeys;
+            rows = mergedRows;
+            size = mergedSize;
+        }
+
+        void removeRows(BitSet staleRows) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (!staleRows.get(rows[i])) {
+                    keys[kept] = keys[i];
+                    rows[kept] = rows[i];
+                    kept++;
+                }
+            }
+            Arrays.fill(keys, kept, size, null);
+            size = kept;
+        }
+
+        // The prefix matching the fewest terms, found with two binary searches per prefix
+        String narrowest(String[] prefixes) {
+            String narrowest = prefixes[0];
+            int narrowestCount = Integer.MAX_VALUE;
+            for (String prefix : prefixes) {
+                int count = lowerBound(prefix + Character.MAX_VALUE, -1) - lowerBound(prefix, -1);
+                if (count < narrowestCount) {
+                    narrowest = prefix;
+                    narrowestCount = count;
+                }
+            }
+            return narrowest;
+        }
+
+        // First position not sorting before (key, row); row -1 gives the first position of the key
+        int lowerBound(String key, int row) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (compare(keys[mid], rows[mid], key, row) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > keys.length) {
+                int newCapacity = Math.max(capacity, keys.length * 2);
+                keys = Arrays.copyOf(keys, newCapacity);
+                rows = Arrays.copyOf(rows, newCapacity);
+            }
+        }
+
+        private static int compare(String firstKey, int firstRow, String secondKey, int secondRow) {
+            int byKey = firstKey.compareTo(secondKey);
+            return byKey != 0 ? byKey : Integer.compare(firstRow, secondRow);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.chat_app.utilities;
+
+import com.example.chat_app.models.ChatMessage;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MessageLogTest {
+
+    @Test
+    public void insertKeepsTimestampThenIdOrder() {
+        MessageLog log = new MessageLog();
+
+        assertEquals(0, log.insert(message("m3", 300, "third")));
+        assertEquals(0, log.insert(message("m1", 100, "first")));
+        assertEquals(1, log.insert(message("m2", 200, "second")));
+        assertEquals(3, log.insert(message("m4", 400, "fourth")));
+
+        assertEquals(Arrays.asList("m1", "m2", "m3", "m4"), ids(log));
+        assertEquals("second", log.getMessage(1));
+        assertEquals(200, log.getTimestamp(1));
+    }
+
+    @Test
+    public void duplicateInsertIsRejected() {
+        MessageLog log = new MessageLog();
+        log.insert(message("m1", 100, "first"));
+
+        assertEquals(-1, log.insert(message("m1", 100, "again")));
+        assertEquals(1, log.size());
+        assertEquals("first", log.getMessage(0));
+        // Same id, other timestamp: a different key, so a different row
+        assertEquals(1, log.insert(message("m1", 200, "later")));
+    }
+
+    @Test
+    public void insertAllReportsContiguousRuns() {
+        MessageLog log = new MessageLog();
+        log.insert(message("m2", 200, "second"));
+        List<int[]> ranges = new ArrayList<>();
+
+        log.insertAll(Arrays.asList(message("m0", 0, "zero"), message("m1", 100, "first"),
+                message("m2", 200, "duplicate"), message("m3", 300, "third")),
+                (start, count) -> ranges.add(new int[]{start, count}));
+
+        assertEquals(Arrays.asList("m0", "m1", "m2", "m3"), ids(log));
+        assertEquals(2, ranges.size());
+        assertRange(ranges.get(0), 0, 2);
+        assertRange(ranges.get(1), 3, 1);
+    }
+
+    @Test
+    public void equalTimestampsAreFoundById() {
+        MessageLog log = new MessageLog();
+        log.insert(message("c", 100, "c"));
+        log.insert(message("a", 100, "a"));
+        log.insert(message("b", 100, "b"));
+        log.insert(message("z", 50, "earlier"));
+
+        assertEquals(Arrays.asList("z", "a", "b", "c"), ids(log));
+        assertEquals(2, log.positionOf(key("b", 100)));
+        assertEquals(-1, log.positionOf(key("bb", 100)));
+        assertEquals(-1, log.positionOf(key("b", 101)));
+        assertTrue(log.contains(key("c", 100)));
+
+        // An empty id is the first position at or after the timestamp
+        assertEquals(1, log.lowerBound(100, ""));
+        assertEquals(2, log.lowerBound(100, "b"));
+        assertEquals(3, log.lowerBound(100, "bb"));
+        assertEquals(4, log.lowerBound(101, ""));
+        assertEquals(0, log.lowerBound(0, ""));
+    }
+
+    @Test
+    public void updateReplacesBodyAndTombstoneDropsIt() {
+        MessageLog log = new MessageLog();
+        log.insert(message("m1", 100, "first"));
+        log.insert(message("m2", 200, "second"));
+
+        ChatMessage edit = message("m1", 100, "edited");
+        edit.editedAt = 500;
+        assertEquals(0, log.update(edit));
+        assertEquals("edited", log.getMessage(0));
+        assertEquals(500, log.getEditedAt(0));
+        assertFalse(log.isDeleted(0));
+
+        ChatMessage tombstone = message("m1", 100, null);
+        tombstone.deleted = true;
+        tombstone.editedAt = 600;
+        assertEquals(0, log.update(tombstone));
+        assertNull(log.getMessage(0));
+        assertTrue(log.isDeleted(0));
+        assertEquals("m1", log.getId(0));
+        assertEquals("second", log.getMessage(1));
+
+        assertEquals(-1, log.update(message("m3", 300, "unknown")));
+        assertEquals(2, log.size());
+    }
+
+    @Test
+    public void trimmingRemovesBothEnds() {
+        MessageLog log = new MessageLog();
+        for (int i = 0; i < 10; i++) {
+            log.insert(message("m" + i, i * 100L, "body " + i));
+        }
+        List<int[]> ranges = new ArrayList<>();
+
+        log.removeFirst(3, (start, count) -> ranges.add(new int[]{start, count}));
+        log.removeLast(2, (start, count) -> ranges.add(new int[]{start, count}));
+
+        assertEquals(Arrays.asList("m3", "m4", "m5", "m6", "m7"), ids(log));
+        assertRange(ranges.get(0), 0, 3);
+        assertRange(ranges.get(1), 5, 2);
+        assertEquals("body 3", log.getMessage(0));
+        assertEquals("body 7", log.getMessage(4));
+
+        // Asking for more than is held empties the log
+        log.removeLast(50, (start, count) -> ranges.add(new int[]{start, count}));
+        assertTrue(log.isEmpty());
+        assertRange(ranges.get(2), 0, 5);
+    }
+
+    @Test
+    public void removeReportsThePositionOfTheMessage() {
+        MessageLog log = new MessageLog();
+        log.insert(message("m1", 100, "first"));
+        log.insert(message("m2", 200, "second"));
+        log.insert(message("m3", 300, "third"));
+
+        assertEquals(1, log.remove(key("m2", 200), (start, count) -> assertRange(new int[]{start, count}, 1, 1)));
+        assertEquals(-1, log.remove(key("m2", 200), (start, count) -> {
+            throw new AssertionError("nothing to remove");
+        }));
+        assertEquals(Arrays.asList("m1", "m3"), ids(log));
+        assertEquals("third", log.getMessage(1));
+    }
+
+    @Test
+    public void compactionKeepsContentsIntact() {
+        MessageLog log = new MessageLog();
+        int count = 500;
+        for (int i = 0; i < count; i++) {
+            log.insert(message(String.format("m%04d", i), i, "body " + i));
+        }
+        // Every edit appends a new record and leaves the old one behind, enough to compact several times
+        for (int round = 1; round <= 5; round++) {
+            for (int i = 0; i < count; i++) {
+                ChatMessage edit = message(String.format("m%04d", i), i, "edit " + round + " of " + i);
+                edit.editedAt = round;
+                log.update(edit);
+            }
+        }
+        log.removeFirst(100, (start, removed) -> { });
+        log.removeLast(100, (start, removed) -> { });
+
+        assertEquals(300, log.size());
+        for (int position = 0; position < log.size(); position++) {
+            int i = position + 100;
+            ChatMessage chatMessage = log.get(position);
+            assertEquals(String.format("m%04d", i), chatMessage.id);
+            assertEquals("edit 5 of " + i, chatMessage.message);
+            assertEquals(i, chatMessage.timestamp);
+            assertEquals(5, chatMessage.editedAt);
+            assertEquals("conversation", chatMessage.conversationId);
+            assertEquals("sender", chatMessage.senderId);
+            assertEquals("receiver", chatMessage.receiverId);
+        }
+    }
+
+    private static ChatMessage message(String id, long timestamp, String body) {
+        ChatMessage chatMessage = key(id, timestamp);
+        chatMessage.conversationId = "conversation";
+        chatMessage.senderId = "sender";
+        chatMessage.receiverId = "receiver";
+        chatMessage.message = body;
+        return chatMessage;
+    }
+
+    // Only what the (timestamp, id) lookups read
+    private static ChatMessage key(String id, long timestamp) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.id = id;
+        chatMessage.timestamp = timestamp;
+        return chatMessage;
+    }
+
+    private static List<String> ids(MessageLog log) {
+        List<String> ids = new ArrayList<>();
+        for (int position = 0; position < log.size(); position++) {
+            ids.add(log.getId(position));
+        }
+        return ids;
+    }
+
+    private static void assertRange(int[] range, int start, int count) {
+        assertEquals(start, range[0]);
+        assertEquals(count, range[1]);
+    }
+}
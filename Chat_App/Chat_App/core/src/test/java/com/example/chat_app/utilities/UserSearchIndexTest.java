@@ -0,0 +1,102 @@
+package com.example.chat_app.utilities;
+
+import com.example.chat_app.models.User;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class UserSearchIndexTest {
+
+    @Test
+    public void multiWordQueryMatchesFirstWordOfName() {
+        UserSearchIndex index = new UserSearchIndex();
+        index.put(user("1", "John Smith", "john@example.com"));
+
+        assertEquals(ids("1"), ids(index.search("smith jo", 10)));
+    }
+
+    @Test
+    public void multiWordQueryDoesNotDependOnOtherUsers() {
+        UserSearchIndex index = new UserSearchIndex();
+        index.put(user("1", "John Smith", "john@example.com"));
+        index.put(user("2", "Ann Joplin", "ann@example.com"));
+
+        assertEquals(ids("1"), ids(index.search("smith jo", 10)));
+    }
+
+    @Test
+    public void queryWordsMatchInAnyOrder() {
+        UserSearchIndex index = new UserSearchIndex();
+        index.put(user("1", "John Smith", "john@example.com"));
+        index.put(user("2", "Sara Connor", "sara@example.com"));
+
+        assertEquals(ids("1"), ids(index.search("john smith", 10)));
+        assertEquals(ids("1"), ids(index.search("smith john", 10)));
+        assertEquals(ids("2"), ids(index.search("co sa", 10)));
+        assertTrue(index.search("john connor", 10).isEmpty());
+    }
+
+    @Test
+    public void namePrefixRanksBeforeWordPrefix() {
+        UserSearchIndex index = new UserSearchIndex();
+        index.put(user("1", "Ann Joplin", "ann@example.com"));
+        index.put(user("2", "Joan Ark", "joan@example.com"));
+
+        assertEquals(ids("2", "1"), ids(index.search("jo", 10)));
+    }
+
+    @Test
+    public void renamedUserIsFoundByNewNameOnly() {
+        UserSearchIndex index = new UserSearchIndex();
+        index.put(user("1", "John Smith", "john@example.com"));
+        index.put(user("1", "John Baker", "john@example.com"));
+
+        assertTrue(index.search("smith", 10).isEmpty());
+        assertEquals(ids("1"), ids(index.search("baker jo", 10)));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void largeBatchIsSearchableLikeSmallDeltas() {
+        UserSearchIndex index = new UserSearchIndex();
+        List<User> batch = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            batch.add(user(String.valueOf(i), "User" + i + " Person" + i, "user" + i + "@example.com"));
+        }
+        batch.add(user("john", "John Smith", "john@example.com"));
+        index.putAll(batch);
+
+        assertEquals(ids("john"), ids(index.search("smith jo", 10)));
+        assertEquals(ids("42"), ids(index.search("person42 user42", 10)));
+        assertEquals(101, index.inNameOrder().size());
+    }
+
+    private static User user(String id, String name, String email) {
+        User user = new User();
+        user.id = id;
+        user.name = name;
+        user.email = email;
+        return user;
+    }
+
+    private static List<String> ids(String... ids) {
+        List<String> list = new ArrayList<>();
+        for (String id : ids) {
+            list.add(id);
+        }
+        return list;
+    }
+
+    private static List<String> ids(List<User> users) {
+        List<String> list = new ArrayList<>();
+        for (User user : users) {
+            list.add(user.id);
+        }
+        return list;
+    }
+}